@@ -0,0 +1,29 @@
+package com.exchange.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    // Synthetic three-letter codes, same shape as the openExchange catalogue
+    public static String[] codes(int count) {
+        String[] codes = new String[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = "" + (char) ('A' + i / 676 % 26) + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26);
+        }
+        return codes;
+    }
+
+    public static Map<String, Double> rates(String[] codes) {
+        Random random = new Random(42);
+        Map<String, Double> rates = new HashMap<>();
+        for (String code : codes) {
+            rates.put(code, 0.01 + random.nextDouble() * 100);
+        }
+        return rates;
+    }
+}
@@ -0,0 +1,43 @@
+package com.exchange.benchmarks;
+
+import com.exchange.dtos.ExchangeRate;
+import com.exchange.service.cache.CurrencyIndex;
+import com.exchange.service.cache.RateRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Response body cost of '/exchange-rates/{currency}': an ExchangeRate backed by a boxed map
+// vs one backed by a cached RateRow
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExchangeRateJsonBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    ExchangeRate boxed;
+    ExchangeRate row;
+
+    @Setup
+    public void setUp() {
+        Map<String, Double> rates = BenchmarkData.rates(BenchmarkData.codes(RateLayoutBenchmark.CURRENCIES));
+        boxed = new ExchangeRate(1L, "AAA", rates);
+        row = new ExchangeRate(1L, "AAA", RateRow.copyOf(new CurrencyIndex(), rates));
+    }
+
+    @Benchmark
+    public byte[] serializeBoxed() throws Exception {
+        return objectMapper.writeValueAsBytes(boxed);
+    }
+
+    @Benchmark
+    public byte[] serializeRow() throws Exception {
+        return objectMapper.writeValueAsBytes(row);
+    }
+}
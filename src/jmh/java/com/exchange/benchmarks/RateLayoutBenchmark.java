@@ -0,0 +1,81 @@
+package com.exchange.benchmarks;
+
+import com.exchange.service.cache.CurrencyIndex;
+import com.exchange.service.cache.RateRow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Boxed Map<String, Double> per currency (old cache layout) vs primitive rows over a shared CurrencyIndex.
+// Run with '-prof gc' to compare allocation of building a row
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLayoutBenchmark {
+
+    public static final int CURRENCIES = 170;
+
+    String[] codes;
+    //equal but not identical to the map keys, like codes parsed from a request path
+    String[] queries;
+    Map<String, Double> boxed;
+    CurrencyIndex index;
+    RateRow row;
+    int[] columns;
+
+    @Setup
+    public void setUp() {
+        codes = BenchmarkData.codes(CURRENCIES);
+        boxed = BenchmarkData.rates(codes);
+        index = new CurrencyIndex();
+        row = RateRow.copyOf(index, boxed);
+        queries = new String[codes.length];
+        columns = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            queries[i] = new String(codes[i].toCharArray());
+            columns[i] = index.indexOf(codes[i]);
+        }
+    }
+
+    @Benchmark
+    public double boxedLookup() {
+        double sum = 0;
+        for (String code : queries) {
+            sum += boxed.get(code);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double rowLookupByCode() {
+        double sum = 0;
+        for (String code : queries) {
+            sum += row.rate(code);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double rowLookupByIndex() {
+        double sum = 0;
+        for (int column : columns) {
+            sum += row.rate(column);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Map<String, Double> buildBoxed() {
+        return new HashMap<>(boxed);
+    }
+
+    @Benchmark
+    public RateRow buildRow() {
+        return RateRow.copyOf(index, boxed);
+    }
+}
@@ -0,0 +1,61 @@
+package com.exchange.benchmarks;
+
+import com.exchange.service.cache.CurrencyIndex;
+import com.exchange.service.cache.RateRow;
+import com.exchange.service.cache.RatesCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cache rebuild cost per 'currencies' row: the old JSON varchar parsed by Jackson into a boxed map
+// vs the packed bytea decoded by RatesCodec into a primitive row
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RatesCodecBenchmark {
+
+    private static final TypeReference<Map<String, Double>> currencyRateType = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    Map<String, Double> rates;
+    String json;
+    byte[] packed;
+    CurrencyIndex index;
+
+    @Setup
+    public void setUp() throws Exception {
+        rates = BenchmarkData.rates(BenchmarkData.codes(RateLayoutBenchmark.CURRENCIES));
+        json = objectMapper.writeValueAsString(rates);
+        packed = RatesCodec.encode(rates);
+        index = new CurrencyIndex();
+        RatesCodec.decode(index, packed);
+    }
+
+    @Benchmark
+    public Map<String, Double> decodeJson() throws Exception {
+        return objectMapper.readValue(json, currencyRateType);
+    }
+
+    @Benchmark
+    public RateRow decodePacked() {
+        return RatesCodec.decode(index, packed);
+    }
+
+    @Benchmark
+    public String encodeJson() throws Exception {
+        return objectMapper.writeValueAsString(rates);
+    }
+
+    @Benchmark
+    public byte[] encodePacked() {
+        return RatesCodec.encode(rates);
+    }
+}
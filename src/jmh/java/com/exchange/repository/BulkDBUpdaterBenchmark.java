@@ -0,0 +1,56 @@
+package com.exchange.repository;
+
+import com.exchange.benchmarks.BenchmarkData;
+import com.exchange.benchmarks.RateLayoutBenchmark;
+import com.exchange.repository.entities.Currency;
+import com.exchange.service.cache.RatesCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Client side of one refresh batch: binding every 'currencies' row to the upsert statement.
+// The statement is a no-op stub, so the database round trip is not measured
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkDBUpdaterBenchmark {
+
+    List<Currency> batch;
+    PreparedStatement statement;
+
+    @Setup
+    public void setUp() {
+        String[] codes = BenchmarkData.codes(RateLayoutBenchmark.CURRENCIES);
+        Map<String, Double> rates = BenchmarkData.rates(codes);
+        batch = new ArrayList<>();
+        for (String code : codes) {
+            Currency currency = new Currency();
+            currency.setCurrencyName(code);
+            currency.setCurrencyFullName("Currency " + code);
+            currency.setRates(RatesCodec.encode(rates));
+            currency.setCreatedAt(1L);
+            currency.setUpdatedAt(1L);
+            batch.add(currency);
+        }
+        statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> null);
+    }
+
+    @Benchmark
+    public int prepareBatch() throws Exception {
+        BatchPreparedStatementSetter setter = BulkDBUpdater.batchSetter(batch);
+        for (int i = 0; i < setter.getBatchSize(); i++) {
+            setter.setValues(statement, i);
+        }
+        return setter.getBatchSize();
+    }
+}
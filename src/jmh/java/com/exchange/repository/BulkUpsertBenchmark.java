@@ -0,0 +1,116 @@
+package com.exchange.repository;
+
+import com.exchange.benchmarks.BenchmarkData;
+import com.exchange.benchmarks.RateLayoutBenchmark;
+import com.exchange.repository.entities.Currency;
+import com.exchange.service.cache.RatesCodec;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One refresh worth of upserts into 'currencies': JDBC batch of INSERT ... ON CONFLICT vs binary COPY into
+// the staging table plus one merge. With 'changed' every invocation brings new fingerprints and rewrites all rows,
+// without it rows only get marked as seen, like a refresh of unchanged rates.
+// Runs against a Testcontainers PostgreSQL, or an existing database given with -Dbench.jdbcUrl (user/password
+// with -Dbench.user / -Dbench.password). Left out of the default jmh run, it takes -PdbBenchmarks
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkUpsertBenchmark {
+
+    private static final String SCHEMA = "bench";
+
+    @Param({"170", "10000", "50000"})
+    int rows;
+
+    @Param({"BATCH", "COPY"})
+    BulkUpsertMode mode;
+
+    @Param({"true", "false"})
+    boolean changed;
+
+    PostgreSQLContainer<?> container;
+    HikariDataSource dataSource;
+    BulkDBUpdater updater;
+    TransactionTemplate transaction;
+    List<Currency> batch;
+    long updatedAt;
+
+    @Setup
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        String jdbcUrl = System.getProperty("bench.jdbcUrl");
+        if (jdbcUrl == null) {
+            container = new PostgreSQLContainer<>("postgres:16-alpine");
+            container.start();
+            dataSource.setJdbcUrl(container.getJdbcUrl());
+            dataSource.setUsername(container.getUsername());
+            dataSource.setPassword(container.getPassword());
+        } else {
+            dataSource.setJdbcUrl(jdbcUrl);
+            dataSource.setUsername(System.getProperty("bench.user", "postgres"));
+            dataSource.setPassword(System.getProperty("bench.password", "postgres"));
+        }
+        //same driver settings as the application
+        dataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA);
+        jdbcTemplate.execute("CREATE TABLE " + SCHEMA + ".currencies (currency_name varchar(255) PRIMARY KEY, " +
+                "currency_full_name varchar(255), rates bytea, rates_hash bigint NOT NULL DEFAULT 0, created_at bigint, " +
+                "updated_at bigint, last_seen_at bigint NOT NULL DEFAULT 0)");
+        //same layout as changelog-1.2 and 1.3
+        jdbcTemplate.execute("ALTER TABLE " + SCHEMA + ".currencies ALTER COLUMN rates SET STORAGE EXTERNAL");
+        jdbcTemplate.execute("CREATE UNLOGGED TABLE " + SCHEMA + ".currencies_staging (LIKE " + SCHEMA + ".currencies INCLUDING DEFAULTS INCLUDING STORAGE)");
+
+        updater = new BulkDBUpdater(dataSource);
+        updater.defaultSchema = SCHEMA;
+        updater.mode = mode;
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        byte[] rates = RatesCodec.encode(BenchmarkData.rates(BenchmarkData.codes(RateLayoutBenchmark.CURRENCIES)));
+        batch = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            //three-letter codes run out at 17576, the key only has to be unique here
+            String code = "C" + i;
+            Currency currency = new Currency();
+            currency.setCurrencyName(code);
+            currency.setCurrencyFullName("Currency " + code);
+            currency.setRates(rates);
+            currency.setCreatedAt(1L);
+            batch.add(currency);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Benchmark
+    public void upsert() {
+        long timestamp = ++updatedAt;
+        batch.forEach(currency -> {
+            currency.setLastSeenAt(timestamp);
+            if (changed) {
+                currency.setRatesHash(timestamp);
+                currency.setUpdatedAt(timestamp);
+            }
+        });
+        transaction.executeWithoutResult(status -> updater.insertOrUpdateBulkData(batch));
+    }
+}
@@ -0,0 +1,65 @@
+package com.exchange.service.open_exchange_impl;
+
+import com.exchange.benchmarks.BenchmarkData;
+import com.exchange.benchmarks.RateLayoutBenchmark;
+import com.exchange.dtos.ExchangeRate;
+import com.exchange.repository.entities.Currency;
+import com.exchange.service.CurrencyChangeNotifications;
+import com.exchange.service.CurrencyMetrics;
+import com.exchange.service.cache.RatesCodec;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Per-row cost of the refresh (prepareCurrencyEntity) and of the cache rebuild (map), plus cache hits of
+// getExchangeRates from several threads at once. The service runs without Spring, only its cache is used
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CurrencyServiceBenchmark {
+
+    OpenExchangeCurrencyService service;
+    String[] codes;
+    ExchangeRate rate;
+    Currency entity;
+
+    @Setup
+    public void setUp() {
+        service = new OpenExchangeCurrencyService(null, null, null, null, null, new CurrencyMetrics(new SimpleMeterRegistry()), null, null, null,
+                new CurrencyChangeNotifications(new HikariDataSource()), null);
+        codes = BenchmarkData.codes(RateLayoutBenchmark.CURRENCIES);
+        Map<String, ExchangeRate> rates = new HashMap<>();
+        for (String code : codes) {
+            rates.put(code, new ExchangeRate(1L, code, BenchmarkData.rates(codes)));
+        }
+        service.exchangeRates.replaceAll(rates);
+        rate = new ExchangeRate(1L, codes[0], BenchmarkData.rates(codes));
+        entity = new Currency();
+        entity.setCurrencyName(codes[0]);
+        entity.setRates(RatesCodec.encode(rate.getRates()));
+    }
+
+    @Benchmark
+    public Currency prepareCurrencyEntity() {
+        return service.prepareCurrencyEntity(codes[0], rate, "Currency", 1L);
+    }
+
+    @Benchmark
+    public ExchangeRate map() {
+        return service.map(entity);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ExchangeRate getExchangeRatesContended() {
+        return service.getExchangeRates(codes[ThreadLocalRandom.current().nextInt(codes.length)]);
+    }
+}
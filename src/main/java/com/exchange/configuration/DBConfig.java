@@ -1,18 +1,32 @@
 package com.exchange.configuration;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
-
-import javax.sql.DataSource;
 
 @Configuration
 public class DBConfig {
 
+    @Value("${db.url}")
+    private String url;
+
+    @Value("${db.username}")
+    private String username;
+
+    @Value("${db.password}")
+    private String password;
+
+    // Pool size, timeouts, leak detection and driver properties are bound from 'db.hikari.*'.
+    // Pool metrics (hikaricp.connections.*) are registered by Actuator for this bean
     @Bean
-    @ConfigurationProperties("db")
-    public DataSource dataSource() {
-        return new DriverManagerDataSource();
+    @ConfigurationProperties("db.hikari")
+    public HikariDataSource dataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        return dataSource;
     }
 }
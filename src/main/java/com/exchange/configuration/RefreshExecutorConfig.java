@@ -0,0 +1,38 @@
+package com.exchange.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@Slf4j
+public class RefreshExecutorConfig {
+
+    @Value("${openExchange.refresh.maxConcurrency:16}")
+    private int maxConcurrency;
+
+    // In-flight fetches are interrupted on shutdown instead of holding the context open
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService refreshExecutor() {
+        try {
+            //virtual thread per task when running on Java 21+, the project itself still targets 17
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.info("Refresh executor uses virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException ex) {
+            log.info("Virtual threads are not available, refresh executor uses up to {} platform threads", maxConcurrency);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("refresh-worker-"));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package com.exchange.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+
 @Configuration
 public class RestTemplateConfig {
+
+    @Value("${openExchange.http.connectTimeout:PT2S}")
+    private Duration connectTimeout;
+
+    @Value("${openExchange.http.responseTimeout:PT10S}")
+    private Duration responseTimeout;
+
     @Bean
     public RestTemplate restTemplate() {
-        return new RestTemplate();
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(responseTimeout);
+        return new RestTemplate(requestFactory);
     }
 }
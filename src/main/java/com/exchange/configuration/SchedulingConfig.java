@@ -0,0 +1,10 @@
+package com.exchange.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// @Scheduled methods, e.g. the daily rate history partition maintenance. Refreshes are planned by RefreshScheduler
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
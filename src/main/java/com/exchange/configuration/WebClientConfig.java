@@ -0,0 +1,58 @@
+package com.exchange.configuration;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "openExchange.client", havingValue = "webclient")
+public class WebClientConfig {
+
+    @Value("${openExchange.http.maxConnections:32}")
+    private int maxConnections;
+
+    @Value("${openExchange.http.pendingAcquireTimeout:PT5S}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${openExchange.http.maxIdleTime:PT30S}")
+    private Duration maxIdleTime;
+
+    @Value("${openExchange.http.connectTimeout:PT2S}")
+    private Duration connectTimeout;
+
+    @Value("${openExchange.http.responseTimeout:PT10S}")
+    private Duration responseTimeout;
+
+    @Value("${openExchange.http.maxInMemorySize:1048576}")
+    private int maxInMemorySize;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider openExchangeConnectionProvider() {
+        return ConnectionProvider.builder("open-exchange")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .evictInBackground(maxIdleTime)
+                .build();
+    }
+
+    @Bean
+    public WebClient openExchangeWebClient(WebClient.Builder builder, ConnectionProvider openExchangeConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(openExchangeConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout)
+                .compress(true);
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxInMemorySize))
+                .build();
+    }
+}
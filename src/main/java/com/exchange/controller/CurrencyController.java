@@ -1,37 +1,217 @@
 package com.exchange.controller;
 
+import com.exchange.dtos.ConversionRequest;
+import com.exchange.dtos.ConversionResult;
 import com.exchange.dtos.ExchangeRate;
+import com.exchange.service.RateHistoryService;
+import com.exchange.service.RateUpdatesPublisher;
+import com.exchange.service.RenderedExchangeRates;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.cache.RatesCodec;
 import com.exchange.service.open_exchange_impl.OpenExchangeCurrencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
 
 @RestController
 @RequestMapping("/api/currencies")
 public class CurrencyController {
     private final OpenExchangeCurrencyService currencyService;
+    private final RenderedExchangeRates renderedRates;
+    private final RateUpdatesPublisher rateUpdates;
+    private final RateHistoryService rateHistory;
+    private final ObjectMapper objectMapper;
 
-    public CurrencyController(OpenExchangeCurrencyService currencyService) {
+    public CurrencyController(OpenExchangeCurrencyService currencyService,
+                              RenderedExchangeRates renderedRates,
+                              RateUpdatesPublisher rateUpdates,
+                              RateHistoryService rateHistory,
+                              ObjectMapper objectMapper) {
         this.currencyService = currencyService;
+        this.renderedRates = renderedRates;
+        this.rateUpdates = rateUpdates;
+        this.rateHistory = rateHistory;
+        this.objectMapper = objectMapper;
     }
 
-    // Get currency list used in project
+    // Get currency list used in project, sorted.
+    // ETags are derived from the content and Last-Modified from 'updated_at' of the rates, so replicas behind
+    // a load balancer agree on both. Conditional requests are checked here before anything is written
     @GetMapping("/list")
-    public ResponseEntity<Collection<String>> getCurrencies() {
-        Collection<String> currencies = currencyService.getCurrencies();
-        return new ResponseEntity<>(currencies, HttpStatus.OK);
+    public ResponseEntity<Collection<String>> getCurrencies(WebRequest request) {
+        ExchangeRatesSnapshot snapshot = currencyService.getSnapshot();
+        Set<String> currencies = new TreeSet<>(snapshot.getCurrencies());
+        String tag = tagOf(String.join(",", currencies));
+        long lastModified = lastModified(snapshot.getRates().values());
+        if (request.checkNotModified(tag, lastModified)) {
+            return notModified().build();
+        }
+        return cacheable(tag, lastModified).body(currencies);
     }
 
-    // Get exchange rate for specified currency
-    @GetMapping("/exchange-rates/{currency}")
-    public ResponseEntity<ExchangeRate> getExchangeRates(@PathVariable("currency") String currency) {
+    // Get exchange rate for specified currency, conditional requests are handled like for the list.
+    // A cached rate is revalidated against the current snapshot, only a base missing from it is loaded
+    // (the service counts both as cache hits and misses).
+    // The body is written from bytes rendered when the snapshot was published, gzip ones if the client accepts them
+    @GetMapping(value = "/exchange-rates/{currency}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getExchangeRates(@PathVariable("currency") String currency,
+                                                   @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                   WebRequest request) {
         ExchangeRate exchangeRate = currencyService.getExchangeRates(currency);
         if (exchangeRate == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
-        return new ResponseEntity<>(exchangeRate, HttpStatus.OK);
+        RenderedExchangeRates.Body body = renderedRates.get(exchangeRate.getBase(), exchangeRate);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        //a strong ETag is per representation, the gzip one gets its own
+        String tag = gzip ? body.tag() + "-gzip" : body.tag();
+        if (request.checkNotModified(tag, exchangeRate.getTimestamp())) {
+            return notModified().varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        if (gzip) {
+            return cacheable(tag, exchangeRate.getTimestamp())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(body.gzip());
+        }
+        return cacheable(tag, exchangeRate.getTimestamp())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .body(body.json());
+    }
+
+    // Get exchange rates of several bases from one snapshot as a JSON array, unknown bases are left out
+    @GetMapping(value = "/exchange-rates", params = "bases", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getExchangeRates(@RequestParam("bases") List<String> bases) {
+        ExchangeRatesSnapshot snapshot = currencyService.getSnapshot();
+        Set<String> codes = new LinkedHashSet<>();
+        bases.forEach(base -> codes.add(base.trim().toUpperCase(Locale.ROOT)));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        List<ExchangeRate> served = new ArrayList<>(codes.size());
+        body.write('[');
+        for (String code : codes) {
+            ExchangeRate exchangeRate = snapshot.get(code);
+            if (exchangeRate == null) {
+                continue;
+            }
+            served.add(exchangeRate);
+            if (body.size() > 1) {
+                body.write(',');
+            }
+            body.writeBytes(renderedRates.get(code, exchangeRate).json());
+        }
+        body.write(']');
+        byte[] bytes = body.toByteArray();
+        //conditional requests are answered with 304 by Spring, the body is already built from pre-rendered bytes
+        return cacheable(Long.toHexString(RatesCodec.fingerprint(bytes)), lastModified(served))
+                .body(bytes);
+    }
+
+    // Stream every cached exchange rate as NDJSON, one rate per line in code order, written from one snapshot as it goes
+    @GetMapping(value = "/exchange-rates", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllExchangeRates(WebRequest request) {
+        ExchangeRatesSnapshot snapshot = currencyService.getSnapshot();
+        Set<String> currencies = new TreeSet<>(snapshot.getCurrencies());
+        //the tag covers the tags of every line, the lines are pre-rendered
+        StringBuilder content = new StringBuilder();
+        for (String currency : currencies) {
+            content.append(currency).append(':').append(renderedRates.get(currency, snapshot.get(currency)).tag()).append(',');
+        }
+        String tag = tagOf(content.toString());
+        //streamed bodies skip Spring's conditional handling, so it is checked here. It also sets ETag and Last-Modified
+        if (request.checkNotModified(tag, lastModified(snapshot.getRates().values()))) {
+            return notModified().build();
+        }
+        StreamingResponseBody body = out -> {
+            for (String currency : currencies) {
+                out.write(renderedRates.get(currency, snapshot.get(currency)).json());
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(currencyService.timeToNextRefresh()))
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // Subscribe to rate updates as Server-Sent Events, one 'rates' event after every refresh.
+    // Without bases the event lists changed currencies, with bases it carries their changed rates
+    @GetMapping(value = "/updates", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam(value = "bases", required = false) List<String> bases) {
+        Set<String> codes = new HashSet<>();
+        if (bases != null) {
+            bases.forEach(base -> codes.add(base.trim().toUpperCase(Locale.ROOT)));
+        }
+        return rateUpdates.subscribe(codes);
+    }
+
+    // Rate history of a currency in 'quote' (USD by default) as NDJSON, one point per 'step' bucket of [from, to).
+    // The last day by the hour unless given, a range over 'history.maxPoints' buckets is rejected
+    @GetMapping(value = "/history/{currency}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getHistory(@PathVariable("currency") String currency,
+                                                            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                            @RequestParam(value = "step", defaultValue = "PT1H") Duration step,
+                                                            @RequestParam(value = "quote", defaultValue = "USD") String quote) {
+        Instant toTime = to == null ? Instant.now() : to;
+        Instant fromTime = from == null ? toTime.minus(Duration.ofDays(1)) : from;
+        if (!rateHistory.isValidRange(fromTime, toTime, step)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        String code = currency.toUpperCase(Locale.ROOT);
+        String quoteCode = quote.toUpperCase(Locale.ROOT);
+        StreamingResponseBody body = out -> rateHistory.series(code, quoteCode, fromTime, toTime, step, point -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(point));
+                out.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    // Convert an amount using cached rates only
+    @GetMapping("/convert")
+    public ResponseEntity<ConversionResult> convert(@RequestParam("from") String from,
+                                                    @RequestParam("to") String to,
+                                                    @RequestParam(value = "amount", defaultValue = "1") double amount) {
+        ConversionResult result = currencyService.convert(from, to, amount);
+        if (result == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    // Convert a batch of amounts, pairs without cached rate come back with empty rate and result
+    @PostMapping("/convert")
+    public ResponseEntity<List<ConversionResult>> convert(@RequestBody List<ConversionRequest> requests) {
+        return new ResponseEntity<>(currencyService.convert(requests), HttpStatus.OK);
     }
 
     // Add a new currency
@@ -44,4 +224,51 @@ public class CurrencyController {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
         }
     }
-}
+
+    // Strong ETag of the served content and its latest 'updated_at', cacheable until the next planned refresh
+    private ResponseEntity.BodyBuilder cacheable(String tag, long lastModified) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(tag)
+                .cacheControl(CacheControl.maxAge(currencyService.timeToNextRefresh()));
+        return lastModified > 0 ? builder.lastModified(lastModified) : builder;
+    }
+
+    // ETag and Last-Modified are already set by checkNotModified
+    private ResponseEntity.BodyBuilder notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.maxAge(currencyService.timeToNextRefresh()));
+    }
+
+    // A rate's timestamp is its row's 'updated_at', the same on every node
+    private static long lastModified(Collection<ExchangeRate> rates) {
+        long lastModified = 0;
+        for (ExchangeRate rate : rates) {
+            lastModified = Math.max(lastModified, rate.getTimestamp());
+        }
+        return lastModified;
+    }
+
+    static String tagOf(String content) {
+        return Long.toHexString(RatesCodec.fingerprint(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().toLowerCase(Locale.ROOT).split(";");
+            if (!parts[0].trim().equals("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                //'q=0' means 'not acceptable'
+                if (parts[i].trim().matches("q=0(\\.0{0,3})?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
\ No newline at end of file
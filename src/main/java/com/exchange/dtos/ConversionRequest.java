@@ -0,0 +1,14 @@
+package com.exchange.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversionRequest {
+    private String from;
+    private String to;
+    private double amount;
+}
@@ -0,0 +1,18 @@
+package com.exchange.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversionResult {
+    private long timestamp;
+    private String from;
+    private String to;
+    private double amount;
+    //null when there is no cached rate for the pair
+    private Double rate;
+    private Double result;
+}
@@ -1,5 +1,6 @@
 package com.exchange.dtos;
 
+import com.exchange.service.cache.RateRow;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,4 +14,13 @@ public class ExchangeRate {
     private long timestamp;
     private String base;
     private Map<String, Double> rates;
+
+    // Primitive lookup, returns NaN when there is no rate. Skips hashing and boxing when backed by the rate table
+    public double rateFor(String currency) {
+        if (rates instanceof RateRow row) {
+            return row.rate(currency);
+        }
+        Double rate = rates == null ? null : rates.get(currency);
+        return rate == null ? Double.NaN : rate;
+    }
 }
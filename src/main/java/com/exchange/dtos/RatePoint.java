@@ -0,0 +1,20 @@
+package com.exchange.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One bucket of a downsampled rate series: units of 'quote' per 1 unit of the currency
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RatePoint {
+    //bucket start, epoch millis
+    private long timestamp;
+    private double average;
+    private double min;
+    private double max;
+    //latest rate within the bucket
+    private double last;
+    private int samples;
+}
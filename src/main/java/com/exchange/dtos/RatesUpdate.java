@@ -0,0 +1,20 @@
+package com.exchange.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RatesUpdate {
+    //cache snapshot version the update was taken from
+    private long version;
+    private long publishedAt;
+    private List<String> changed;
+    private List<String> removed;
+    //changed rates of the subscribed bases, null for subscribers without bases
+    private List<ExchangeRate> rates;
+}
@@ -1,49 +1,155 @@
 package com.exchange.repository;
 
 import com.exchange.repository.entities.Currency;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 
 @Component
+@Slf4j
 public class BulkDBUpdater {
+
+    private static final String COLUMNS = "currency_name, currency_full_name, rates, rates_hash, created_at, updated_at, last_seen_at";
+    //a changed row takes every column but 'created_at' from the new data. Rows with the same fingerprint and name
+    //are left as they are, so a refresh returning the same rates writes no new row versions or TOAST chunks for them
+    private static final String ON_CONFLICT_UPDATE = " ON CONFLICT (currency_name) DO UPDATE SET " +
+            "currency_full_name = EXCLUDED.currency_full_name, " +
+            "rates = EXCLUDED.rates, " +
+            "rates_hash = EXCLUDED.rates_hash, " +
+            "updated_at = EXCLUDED.updated_at, " +
+            "last_seen_at = EXCLUDED.last_seen_at " +
+            "WHERE currencies.rates_hash <> EXCLUDED.rates_hash " +
+            "OR currencies.currency_full_name IS DISTINCT FROM EXCLUDED.currency_full_name";
+    //PGCOPY\n\377\r\n\0, then flags and header extension length
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final JdbcTemplate jdbcTemplate;
 
     @Value("${defaultSchema}")
-    private String defaultSchema;
+    String defaultSchema;
+
+    @Value("${db.bulk.mode:BATCH}")
+    BulkUpsertMode mode = BulkUpsertMode.BATCH;
 
     public BulkDBUpdater(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
     }
 
     public void insertOrUpdateBulkData(List<Currency> dataList) {
-        String sql =
-                "INSERT INTO " + defaultSchema + ".currencies (currency_name, currency_full_name, rates, created_at, updated_at) " +
-                        "VALUES (?, ?, ?, ?, ?) " +
-                        "ON CONFLICT (currency_name) DO UPDATE SET " +
-                        "updated_at = EXCLUDED.updated_at";
+        if (dataList.isEmpty()) {
+            return;
+        }
+        if (mode == BulkUpsertMode.COPY) {
+            copyAndMerge(dataList);
+        } else {
+            batchUpsert(dataList);
+        }
+    }
+
+    // Unchanged rows skipped by the upsert only get their 'last_seen_at' moved, a narrow HOT update
+    void batchUpsert(List<Currency> dataList) {
+        String sql = "INSERT INTO " + defaultSchema + ".currencies (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)" + ON_CONFLICT_UPDATE;
+        jdbcTemplate.batchUpdate(sql, batchSetter(dataList));
+        jdbcTemplate.batchUpdate("UPDATE " + defaultSchema + ".currencies SET last_seen_at = ? " +
+                "WHERE currency_name = ? AND last_seen_at <> ?", dataList, dataList.size(), (ps, data) -> {
+            ps.setLong(1, data.getLastSeenAt());
+            ps.setString(2, data.getCurrencyName());
+            ps.setLong(3, data.getLastSeenAt());
+        });
+    }
+
+    // Expects a transaction: TRUNCATE keeps the staging table locked until commit, so concurrent merges queue up
+    void copyAndMerge(List<Currency> dataList) {
+        String staging = defaultSchema + ".currencies_staging";
+        jdbcTemplate.execute("TRUNCATE " + staging);
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            String sql = "COPY " + staging + " (" + COLUMNS + ") FROM STDIN (FORMAT binary)";
+            PGCopyOutputStream copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql, COPY_BUFFER_SIZE);
+            try {
+                DataOutputStream out = new DataOutputStream(copy);
+                writeBinaryCopy(out, dataList);
+                out.flush();
+                return copy.endCopy();
+            } catch (IOException ex) {
+                throw new SQLException("COPY into " + staging + " failed", ex);
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        });
+        int changed = jdbcTemplate.update("INSERT INTO " + defaultSchema + ".currencies (" + COLUMNS + ") " +
+                "SELECT " + COLUMNS + " FROM " + staging + ON_CONFLICT_UPDATE);
+        //same as for the batch, rows skipped by the merge are only marked as seen
+        jdbcTemplate.update("UPDATE " + defaultSchema + ".currencies c SET last_seen_at = s.last_seen_at FROM " + staging + " s " +
+                "WHERE c.currency_name = s.currency_name AND c.last_seen_at <> s.last_seen_at");
+        log.debug("Merged {} changed of {} currencies", changed, dataList.size());
+    }
 
-        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+    // PostgreSQL binary COPY format, fields in COLUMNS order
+    static void writeBinaryCopy(DataOutputStream out, List<Currency> dataList) throws IOException {
+        out.write(COPY_SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+        for (Currency data : dataList) {
+            out.writeShort(7);
+            writeField(out, data.getCurrencyName() == null ? null : data.getCurrencyName().getBytes(StandardCharsets.UTF_8));
+            writeField(out, data.getCurrencyFullName() == null ? null : data.getCurrencyFullName().getBytes(StandardCharsets.UTF_8));
+            writeField(out, data.getRates());
+            writeLong(out, data.getRatesHash());
+            writeLong(out, data.getCreatedAt());
+            writeLong(out, data.getUpdatedAt());
+            writeLong(out, data.getLastSeenAt());
+        }
+        out.writeShort(-1);
+    }
+
+    private static void writeField(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static void writeLong(DataOutputStream out, long value) throws IOException {
+        out.writeInt(Long.BYTES);
+        out.writeLong(value);
+    }
+
+    static BatchPreparedStatementSetter batchSetter(List<Currency> dataList) {
+        return new BatchPreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps, int i) throws SQLException {
                 Currency data = dataList.get(i);
                 ps.setString(1, data.getCurrencyName());
                 ps.setString(2, data.getCurrencyFullName());
-                ps.setString(3, data.getRates());
-                ps.setLong(4, data.getCreatedAt());
-                ps.setLong(5, data.getUpdatedAt());
+                ps.setBytes(3, data.getRates());
+                ps.setLong(4, data.getRatesHash());
+                ps.setLong(5, data.getCreatedAt());
+                ps.setLong(6, data.getUpdatedAt());
+                ps.setLong(7, data.getLastSeenAt());
             }
 
             @Override
             public int getBatchSize() {
                 return dataList.size();
             }
-        });
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,8 @@
+package com.exchange.repository;
+
+public enum BulkUpsertMode {
+    //rows streamed with binary COPY into the unlogged 'currencies_staging', then merged with one INSERT ... SELECT
+    COPY,
+    //JDBC batch of INSERT ... ON CONFLICT, one statement per row
+    BATCH
+}
@@ -3,11 +3,23 @@ package com.exchange.repository;
 import com.exchange.repository.entities.Currency;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface CurrencyRepository extends JpaRepository<Currency, String> {
 
     @Modifying
-    int deleteByUpdatedAtBefore(long val);
+    int deleteByLastSeenAtBefore(long val);
+
+    @Modifying
+    int deleteByLastSeenAtBeforeAndCurrencyNameNotIn(long val, Collection<String> kept);
+
+    List<Currency> findByUpdatedAtGreaterThan(long val);
+
+    @Query("select c.currencyName from Currency c")
+    List<String> findAllCurrencyNames();
 }
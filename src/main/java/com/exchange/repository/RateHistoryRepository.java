@@ -0,0 +1,113 @@
+package com.exchange.repository;
+
+import com.exchange.dtos.RatePoint;
+import com.exchange.repository.entities.Currency;
+import com.exchange.service.cache.RatesCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// 'currency_rates_history', partitioned by UTC day. A partition is named after its day, e.g. currency_rates_history_p20240131
+@Repository
+public class RateHistoryRepository {
+
+    static final String TABLE = "currency_rates_history";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${defaultSchema}")
+    String defaultSchema;
+
+    public RateHistoryRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    // Appends one observation per currency at its 'last_seen_at', the partitions of those days are created first.
+    // A currency without a USD rate is left out, an already recorded observation is ignored
+    public int append(List<Currency> dataList) {
+        List<Object[]> rows = new ArrayList<>(dataList.size());
+        Set<LocalDate> days = new TreeSet<>();
+        for (Currency data : dataList) {
+            double usdRate = 1 / RatesCodec.rateOf(data.getRates(), "USD");
+            if (Double.isNaN(usdRate) || Double.isInfinite(usdRate)) {
+                continue;
+            }
+            OffsetDateTime observedAt = OffsetDateTime.ofInstant(Instant.ofEpochMilli(data.getLastSeenAt()), ZoneOffset.UTC);
+            days.add(observedAt.toLocalDate());
+            rows.add(new Object[]{data.getCurrencyName(), observedAt, usdRate});
+        }
+        days.forEach(this::createPartition);
+        jdbcTemplate.batchUpdate("INSERT INTO " + defaultSchema + "." + TABLE + " (currency_name, observed_at, usd_rate) " +
+                "VALUES (?, ?, ?) ON CONFLICT DO NOTHING", rows);
+        return rows.size();
+    }
+
+    // No-op for an existing partition, the parent isn't locked then
+    public void createPartition(LocalDate day) {
+        OffsetDateTime from = day.atStartOfDay().atOffset(ZoneOffset.UTC);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition(day) + " PARTITION OF " + defaultSchema + "." + TABLE +
+                " FOR VALUES FROM ('" + from + "') TO ('" + from.plusDays(1) + "')");
+    }
+
+    public List<LocalDate> findPartitionDays() {
+        List<String> names = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "JOIN pg_namespace n ON n.oid = p.relnamespace " +
+                "WHERE n.nspname = ? AND p.relname = ?", String.class, defaultSchema, TABLE);
+        List<LocalDate> days = new ArrayList<>(names.size());
+        for (String name : names) {
+            days.add(LocalDate.parse(name.substring(TABLE.length()), PARTITION_SUFFIX));
+        }
+        days.sort(null);
+        return days;
+    }
+
+    public void dropPartition(LocalDate day) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition(day));
+    }
+
+    // Rate of 'currency' in 'quote' per 'step' bucket in [from, to), buckets are aligned to 'origin'.
+    // Both series are joined on the refresh they were observed at, only the partitions of the range are scanned
+    public List<RatePoint> findSeries(String currency, String quote, Instant origin, Instant from, Instant to, Duration step) {
+        OffsetDateTime fromTime = OffsetDateTime.ofInstant(from, ZoneOffset.UTC);
+        OffsetDateTime toTime = OffsetDateTime.ofInstant(to, ZoneOffset.UTC);
+        String table = defaultSchema + "." + TABLE;
+        return jdbcTemplate.query("SELECT date_bin(make_interval(secs => ?), c.observed_at, ?) AS bucket, " +
+                        "avg(q.usd_rate / c.usd_rate) AS average, " +
+                        "min(q.usd_rate / c.usd_rate) AS min, " +
+                        "max(q.usd_rate / c.usd_rate) AS max, " +
+                        "(array_agg(q.usd_rate / c.usd_rate ORDER BY c.observed_at DESC))[1] AS last, " +
+                        "count(*) AS samples " +
+                        "FROM " + table + " c JOIN " + table + " q ON q.observed_at = c.observed_at " +
+                        "WHERE c.currency_name = ? AND q.currency_name = ? " +
+                        "AND c.observed_at >= ? AND c.observed_at < ? AND q.observed_at >= ? AND q.observed_at < ? " +
+                        "GROUP BY bucket ORDER BY bucket",
+                (rs, rowNum) -> new RatePoint(
+                        rs.getObject("bucket", OffsetDateTime.class).toInstant().toEpochMilli(),
+                        rs.getDouble("average"),
+                        rs.getDouble("min"),
+                        rs.getDouble("max"),
+                        rs.getDouble("last"),
+                        rs.getInt("samples")),
+                step.toMillis() / 1000.0, OffsetDateTime.ofInstant(origin, ZoneOffset.UTC), currency, quote,
+                fromTime, toTime, fromTime, toTime);
+    }
+
+    private String partition(LocalDate day) {
+        return defaultSchema + "." + TABLE + day.format(PARTITION_SUFFIX);
+    }
+}
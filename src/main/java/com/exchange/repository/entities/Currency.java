@@ -13,7 +13,13 @@ public class Currency {
     @Id
     private String currencyName;
     private String currencyFullName;
-    private String rates;
+    //packed with RatesCodec
+    private byte[] rates;
+    //RatesCodec.fingerprint of 'rates'
+    private long ratesHash;
     private long createdAt;
+    //last time the rates changed
     private long updatedAt;
+    //last refresh that returned the currency
+    private long lastSeenAt;
 }
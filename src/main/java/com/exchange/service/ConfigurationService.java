@@ -2,23 +2,52 @@ package com.exchange.service;
 
 import com.exchange.repository.ConfigurationRepository;
 import com.exchange.repository.entities.Configuration;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
-import java.util.Objects;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// Reads are served from an in-memory snapshot of the 'configuration' table, loaded on first use and reloaded
+// periodically. Writes update the snapshot at once and are persisted asynchronously in batches
 @Service
+@Slf4j
 public class ConfigurationService {
 
     private final ConfigurationRepository configurationRepository;
+    private final ScheduledExecutorService writeBehindExecutor;
+    private final Map<String, Configuration> pendingWrites = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile Map<String, String> values;
+
+    @Value("${configuration.flushDelay:PT1S}")
+    private Duration flushDelay = Duration.ofSeconds(1);
+
+    @Value("${configuration.reloadInterval:PT1M}")
+    private Duration reloadInterval = Duration.ofMinutes(1);
 
     public ConfigurationService(ConfigurationRepository configurationRepository) {
         this.configurationRepository = configurationRepository;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("configuration-writer-");
+        threadFactory.setDaemon(true);
+        this.writeBehindExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
     }
 
     private static final String LAST_FETCH_TIMESTAMP = "fetch.lastTimestamp";
     private static final String OPEN_EXCHANGE_APP_ID = "fetch.openExchange.appId";
     private static final String OPEN_EXCHANGE_BASE_URL = "fetch.openExchange.baseUrl";
     private static final String OPEN_EXCHANGE_FAIL_ON_LAST_ITERATION = "fetch.openExchange.failOnLastIteration";
+    private static final String OPEN_EXCHANGE_RETRY_CURRENCIES = "fetch.openExchange.retryCurrencies";
+    //'configuration.value' is varchar(1000), a longer value would fail every flush of the batch it is in
+    static final int MAX_VALUE_LENGTH = 1000;
 
     public Long getFetchLastTimestamp() {
         return Long.parseLong(getConfigurationValue(LAST_FETCH_TIMESTAMP, "0"));
@@ -52,16 +81,115 @@ public class ConfigurationService {
         saveConfiguration(OPEN_EXCHANGE_FAIL_ON_LAST_ITERATION, String.valueOf(value));
     }
 
+    // Currencies that failed on the last iteration and are retried before the next one, stored comma-separated
+    public Set<String> getOpenExchangeRetryCurrencies() {
+        String value = getConfigurationValue(OPEN_EXCHANGE_RETRY_CURRENCIES, "");
+        return value.isEmpty() ? Set.of() : new TreeSet<>(Arrays.asList(value.split(",")));
+    }
+
+    public void setOpenExchangeRetryCurrencies(Set<String> value) {
+        saveConfiguration(OPEN_EXCHANGE_RETRY_CURRENCIES, String.join(",", new TreeSet<>(value)));
+    }
+
+    // Re-reads the table, values written locally but not flushed yet win over the stored ones
+    public synchronized void reload() {
+        Map<String, String> loaded = new HashMap<>();
+        for (Configuration configuration : configurationRepository.findAll()) {
+            if (configuration.getValue() != null) {
+                loaded.put(configuration.getKey(), configuration.getValue());
+            }
+        }
+        for (Configuration pending : pendingWrites.values()) {
+            apply(loaded, pending);
+        }
+        values = Collections.unmodifiableMap(loaded);
+        log.debug("Configuration is loaded, {} values", loaded.size());
+    }
+
+    // Persists pending writes in one batch. False when they couldn't be saved, they are retried in the background then
+    public synchronized boolean flush() {
+        flushScheduled.set(false);
+        if (pendingWrites.isEmpty()) {
+            return true;
+        }
+        List<Configuration> batch = new ArrayList<>(pendingWrites.values());
+        batch.forEach(configuration -> pendingWrites.remove(configuration.getKey(), configuration));
+        try {
+            configurationRepository.saveAll(batch);
+            log.debug("Flushed {} configuration values", batch.size());
+            return true;
+        } catch (Exception ex) {
+            log.error("Exception on saving configuration. Values will be retried. Exception message '{}'", ex.getMessage(), ex);
+            //a newer write of the same key replaces the failed one
+            batch.forEach(configuration -> pendingWrites.putIfAbsent(configuration.getKey(), configuration));
+            scheduleFlush();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeBehindExecutor.shutdownNow();
+        flush();
+    }
+
     private void saveConfiguration(String key, String value) {
+        if (value != null && value.length() > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException("Value of '" + key + "' is longer than " + MAX_VALUE_LENGTH + " characters");
+        }
         Configuration configuration = new Configuration();
         configuration.setKey(key);
         configuration.setValue(value);
-        configurationRepository.save(configuration);
+        synchronized (this) {
+            Map<String, String> updated = new HashMap<>(snapshot());
+            apply(updated, configuration);
+            values = Collections.unmodifiableMap(updated);
+            pendingWrites.put(key, configuration);
+        }
+        scheduleFlush();
     }
 
     private String getConfigurationValue(String key, String defaultValue) {
-        return configurationRepository.findById(key)
-                .map(Configuration::getValue)
-                .orElse(defaultValue);
+        return snapshot().getOrDefault(key, defaultValue);
+    }
+
+    private Map<String, String> snapshot() {
+        Map<String, String> current = values;
+        if (current == null) {
+            synchronized (this) {
+                if (values == null) {
+                    reload();
+                    scheduleReload();
+                }
+                current = values;
+            }
+        }
+        return current;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true) && !writeBehindExecutor.isShutdown()) {
+            writeBehindExecutor.schedule(this::flush, flushDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduleReload() {
+        if (!reloadInterval.isZero() && !writeBehindExecutor.isShutdown()) {
+            writeBehindExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    reload();
+                } catch (Exception ex) {
+                    log.error("Exception on reloading configuration. Exception message '{}'", ex.getMessage(), ex);
+                }
+            }, reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void apply(Map<String, String> values, Configuration configuration) {
+        if (configuration.getValue() == null) {
+            values.remove(configuration.getKey());
+        } else {
+            values.put(configuration.getKey(), configuration.getValue());
+        }
     }
 }
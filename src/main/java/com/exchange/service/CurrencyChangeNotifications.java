@@ -0,0 +1,171 @@
+package com.exchange.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Cross-node invalidation of the cache over Postgres LISTEN/NOTIFY. A node that changed 'currencies' notifies
+// with its node id, every other node runs its listeners. Listeners are run on the listening thread, notifications
+// that arrive meanwhile are queued by the driver and handled by one more run
+@Component
+@Slf4j
+public class CurrencyChangeNotifications {
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile Thread listenerThread;
+    private volatile Connection listenConnection;
+
+    @Value("${notifications.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${notifications.channel:currencies_changed}")
+    String channel = "currencies_changed";
+
+    //longest wait for a notification before the connection is checked
+    @Value("${notifications.pollTimeout:PT30S}")
+    Duration pollTimeout = Duration.ofSeconds(30);
+
+    @Value("${notifications.reconnectDelay:PT5S}")
+    Duration reconnectDelay = Duration.ofSeconds(5);
+
+    public CurrencyChangeNotifications(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Run when another node changed 'currencies', or when notifications could have been missed
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    // Sent at once, expects the changes to be committed. A failure only leaves other nodes to their own schedule
+    public void notifyChanged() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> {
+            }, channel, nodeId);
+        } catch (Exception ex) {
+            log.warn("Exception on notifying other nodes about changed currencies. Exception message '{}'", ex.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::listen, "currency-changes-listener");
+        thread.setDaemon(true);
+        listenerThread = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread thread = listenerThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        closeQuietly(listenConnection);
+    }
+
+    void listen() {
+        boolean reconnected = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSource.getJdbcUrl(), dataSource.getUsername(), dataSource.getPassword())) {
+                listenConnection = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                log.info("Listening to currency changes on '{}' as node {}", channel, nodeId);
+                if (reconnected) {
+                    //changes made while the connection was down were not delivered
+                    fire();
+                }
+                receive(connection.unwrap(PGConnection.class), connection);
+            } catch (SQLException ex) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Connection listening to currency changes is lost, reconnecting in {}. Exception message '{}'",
+                        reconnectDelay, ex.getMessage());
+            }
+            reconnected = true;
+            try {
+                Thread.sleep(reconnectDelay.toMillis());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void receive(PGConnection pgConnection, Connection connection) throws SQLException {
+        while (running) {
+            PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+            if (notifications == null || notifications.length == 0) {
+                //a silently dropped connection never delivers anything, so it is checked when nothing comes
+                if (!connection.isValid((int) reconnectDelay.toSeconds())) {
+                    throw new SQLException("Listening connection is not valid");
+                }
+                continue;
+            }
+            for (PGNotification notification : notifications) {
+                if (!nodeId.equals(notification.getParameter())) {
+                    log.debug("Currencies are changed by node {}", notification.getParameter());
+                    fire();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void fire() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException ex) {
+                log.error("Currency change listener failed. Exception message '{}'", ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            log.debug("Exception on closing the listening connection. Exception message '{}'", ex.getMessage());
+        }
+    }
+}
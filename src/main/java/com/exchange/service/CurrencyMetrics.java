@@ -0,0 +1,115 @@
+package com.exchange.service;
+
+import com.exchange.service.cache.ExchangeRatesStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Meters of the refresh pipeline, the third-party calls and the rates cache, published through Actuator
+// ('/actuator/metrics', '/actuator/prometheus')
+@Component
+public class CurrencyMetrics {
+
+    private static final String REFRESH = "exchange.refresh";
+    private static final String REFRESH_RETRY = "exchange.refresh.retry";
+    private static final String REFRESH_STEP = "exchange.refresh.step";
+    private static final String REFRESH_FAILURES = "exchange.refresh.currency.failures";
+    private static final String OPEN_EXCHANGE_REQUESTS = "exchange.openexchange.requests";
+    private static final String DB_ROWS = "exchange.db.rows";
+    private static final String CACHE_REQUESTS = "exchange.cache.requests";
+    private static final String REFRESH_NEXT_RUN = "exchange.refresh.next_run";
+
+    private final MeterRegistry registry;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public CurrencyMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.cacheHits = Counter.builder(CACHE_REQUESTS).tag("result", "hit").register(registry);
+        this.cacheMisses = Counter.builder(CACHE_REQUESTS).tag("result", "miss").register(registry);
+    }
+
+    // Steps of one refresh: catalogue, prepare, bulk_update, cleanup, cache_reload
+    public <T> T recordStep(String step, Supplier<T> body) {
+        return record(REFRESH_STEP, Tags.of("step", step), false, body);
+    }
+
+    public void recordStep(String step, Runnable body) {
+        recordStep(step, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public void recordRefresh(long startNanos, boolean failed) {
+        Timer.builder(REFRESH)
+                .tag("outcome", failed ? "failed" : "success")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Retry of the currencies that failed on the last refresh
+    public void recordRetry(long startNanos, boolean failed) {
+        Timer.builder(REFRESH_RETRY)
+                .tag("outcome", failed ? "failed" : "success")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Latency distribution of the openExchange API, published as a histogram
+    public <T> T recordExternalCall(String operation, Supplier<T> body) {
+        return record(OPEN_EXCHANGE_REQUESTS, Tags.of("operation", operation), true, body);
+    }
+
+    public void currencyFailed(String reason) {
+        registry.counter(REFRESH_FAILURES, "reason", reason).increment();
+    }
+
+    public void rowsWritten(String operation, int rows) {
+        registry.counter(DB_ROWS, "operation", operation).increment(rows);
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public void bindCache(ExchangeRatesStore store) {
+        Gauge.builder("exchange.cache.currencies", store, s -> s.snapshot().size()).register(registry);
+        Gauge.builder("exchange.cache.version", store, s -> s.snapshot().getVersion()).register(registry);
+    }
+
+    // Seconds until the next refresh in the cluster, zero when it is overdue
+    public void bindNextRefresh(Supplier<Duration> timeToNextRefresh) {
+        Gauge.builder(REFRESH_NEXT_RUN, () -> timeToNextRefresh.get().toMillis() / 1000.0)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private <T> T record(String name, Tags tags, boolean histogram, Supplier<T> body) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return body.get();
+        } catch (RuntimeException ex) {
+            outcome = "error";
+            throw ex;
+        } finally {
+            Timer.builder(name)
+                    .tags(tags.and("outcome", outcome))
+                    .publishPercentileHistogram(histogram)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
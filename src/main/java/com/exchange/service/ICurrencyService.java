@@ -1,8 +1,11 @@
 package com.exchange.service;
 
+import com.exchange.dtos.ConversionRequest;
+import com.exchange.dtos.ConversionResult;
 import com.exchange.dtos.ExchangeRate;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface ICurrencyService {
     Collection<String> getCurrencies();
@@ -10,4 +13,8 @@ public interface ICurrencyService {
     ExchangeRate getExchangeRates(String currency);
 
     void addCurrency(String currency);
+
+    ConversionResult convert(String from, String to, double amount);
+
+    List<ConversionResult> convert(List<ConversionRequest> requests);
 }
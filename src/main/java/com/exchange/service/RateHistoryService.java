@@ -0,0 +1,89 @@
+package com.exchange.service;
+
+import com.exchange.dtos.RatePoint;
+import com.exchange.repository.RateHistoryRepository;
+import com.exchange.repository.entities.Currency;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Rate history of every refresh. Day partitions are created ahead and dropped after 'retention' by a daily task,
+// a refresh creates the partition it writes to by itself as well
+@Service
+@Slf4j
+public class RateHistoryService {
+
+    private final RateHistoryRepository rateHistoryRepository;
+
+    @Value("${history.retention:P90D}")
+    Duration retention = Duration.ofDays(90);
+
+    @Value("${history.partitionsAhead:2}")
+    int partitionsAhead = 2;
+
+    @Value("${history.maxPoints:10000}")
+    int maxPoints = 10000;
+
+    //buckets read per query while a series is written
+    @Value("${history.pageSize:500}")
+    int pageSize = 500;
+
+    public RateHistoryService(RateHistoryRepository rateHistoryRepository) {
+        this.rateHistoryRepository = rateHistoryRepository;
+    }
+
+    // Expected to run in the transaction of the bulk update, so history and 'currencies' commit together
+    public void record(List<Currency> dataList) {
+        int appended = rateHistoryRepository.append(dataList);
+        log.debug("Appended {} rates to the history", appended);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${history.maintenance.cron:0 5 0 * * *}", zone = "UTC")
+    public void maintainPartitions() {
+        try {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            for (int i = 0; i <= partitionsAhead; i++) {
+                rateHistoryRepository.createPartition(today.plusDays(i));
+            }
+            //a partition is dropped once all of its day is older than the retention
+            LocalDate oldestKept = LocalDate.ofInstant(Instant.now().minus(retention), ZoneOffset.UTC);
+            for (LocalDate day : rateHistoryRepository.findPartitionDays()) {
+                if (day.isBefore(oldestKept)) {
+                    rateHistoryRepository.dropPartition(day);
+                    log.info("Dropped rate history partition of {}", day);
+                }
+            }
+        } catch (Exception ex) {
+            log.error("Exception on rate history partition maintenance. Exception message '{}'", ex.getMessage(), ex);
+        }
+    }
+
+    // A range is served when it isn't empty and fits into 'maxPoints' buckets
+    public boolean isValidRange(Instant from, Instant to, Duration step) {
+        if (step.toMillis() <= 0 || !from.isBefore(to)) {
+            return false;
+        }
+        return Duration.between(from, to).toMillis() / step.toMillis() < maxPoints;
+    }
+
+    // Downsampled series of 'currency' in 'quote', read in windows of 'pageSize' buckets. A window is read
+    // into memory and its connection returned before its points are handed over, so a slow client holds none
+    public void series(String currency, String quote, Instant from, Instant to, Duration step, Consumer<RatePoint> consumer) {
+        Duration window = step.multipliedBy(pageSize);
+        for (Instant pageFrom = from; pageFrom.isBefore(to); pageFrom = pageFrom.plus(window)) {
+            Instant pageTo = pageFrom.plus(window).isBefore(to) ? pageFrom.plus(window) : to;
+            rateHistoryRepository.findSeries(currency, quote, from, pageFrom, pageTo, step).forEach(consumer);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.exchange.service;
+
+import com.exchange.dtos.ExchangeRate;
+import com.exchange.dtos.RatesUpdate;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.open_exchange_impl.OpenExchangeCurrencyService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Pushes a 'rates' Server-Sent Event to subscribers whenever a new cache snapshot is published.
+// Subscribers are split into shards, each served by its own thread: the publishing (scheduler) thread only hands
+// the snapshots over, a slow client delays its shard only, and every subscriber gets its events in order.
+// Each update is computed against the last snapshot sent to that subscriber, so a publish reported late
+// is already covered by the newer one and nothing is lost
+@Component
+@Slf4j
+public class RateUpdatesPublisher {
+
+    static final String EVENT_NAME = "rates";
+
+    private final OpenExchangeCurrencyService currencyService;
+    private final Duration timeout;
+    private final List<Set<Subscriber>> shards = new ArrayList<>();
+    private final List<ExecutorService> shardExecutors = new ArrayList<>();
+    private final AtomicLong subscriberIds = new AtomicLong();
+
+    public RateUpdatesPublisher(OpenExchangeCurrencyService currencyService,
+                                @Value("${updates.timeout:PT30M}") Duration timeout,
+                                @Value("${updates.fanOutThreads:4}") int fanOutThreads) {
+        this.currencyService = currencyService;
+        this.timeout = timeout;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rate-updates-");
+        threadFactory.setDaemon(true);
+        for (int i = 0; i < fanOutThreads; i++) {
+            shards.add(ConcurrentHashMap.newKeySet());
+            shardExecutors.add(Executors.newSingleThreadExecutor(threadFactory));
+        }
+        currencyService.addSnapshotListener(this::onPublish);
+    }
+
+    // Empty bases - the update lists changed and removed codes only. Otherwise it carries the changed rates
+    // of those bases, and is skipped when none of them changed
+    public SseEmitter subscribe(Set<String> bases) {
+        return subscribe(bases, new SseEmitter(timeout.toMillis()));
+    }
+
+    SseEmitter subscribe(Set<String> bases, SseEmitter emitter) {
+        //the first update is computed against the snapshot current at subscription
+        Subscriber subscriber = new Subscriber(subscriberIds.incrementAndGet(), bases, emitter,
+                new AtomicReference<>(currencyService.getSnapshot()));
+        Set<Subscriber> shard = shards.get((int) (subscriber.id() % shards.size()));
+        shard.add(subscriber);
+        emitter.onCompletion(() -> shard.remove(subscriber));
+        emitter.onTimeout(() -> shard.remove(subscriber));
+        emitter.onError(ex -> shard.remove(subscriber));
+        return emitter;
+    }
+
+    public int subscribers() {
+        return shards.stream().mapToInt(Set::size).sum();
+    }
+
+    void onPublish(ExchangeRatesSnapshot previous, ExchangeRatesSnapshot published) {
+        for (int i = 0; i < shards.size(); i++) {
+            Set<Subscriber> shard = shards.get(i);
+            if (!shard.isEmpty()) {
+                shardExecutors.get(i).execute(() -> shard.forEach(subscriber -> send(subscriber, published)));
+            }
+        }
+    }
+
+    // Runs on the shard thread only, which is what makes the read and the swap of 'sent' safe
+    private void send(Subscriber subscriber, ExchangeRatesSnapshot published) {
+        ExchangeRatesSnapshot sent = subscriber.sent().get();
+        //concurrent publishes can be reported out of order, the newer one already carried the older changes
+        if (sent.getVersion() >= published.getVersion()) {
+            return;
+        }
+        subscriber.sent().set(published);
+        RatesUpdate update = update(sent, published, subscriber.bases());
+        if (update == null) {
+            return;
+        }
+        try {
+            subscriber.emitter().send(SseEmitter.event()
+                    .id(String.valueOf(update.getVersion()))
+                    .name(EVENT_NAME)
+                    .data(update, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException ex) {
+            log.debug("Subscriber {} is gone. Exception message '{}'", subscriber.id(), ex.getMessage());
+            subscriber.emitter().completeWithError(ex);
+        }
+    }
+
+    // Changes between two snapshots. Rates are compared by instance, a rate which wasn't reloaded keeps it
+    static RatesUpdate update(ExchangeRatesSnapshot previous, ExchangeRatesSnapshot published, Set<String> bases) {
+        List<String> changed = new ArrayList<>();
+        List<ExchangeRate> rates = bases.isEmpty() ? null : new ArrayList<>();
+        published.getRates().forEach((currency, rate) -> {
+            if (previous.get(currency) != rate) {
+                changed.add(currency);
+                if (rates != null && bases.contains(currency)) {
+                    rates.add(rate);
+                }
+            }
+        });
+        List<String> removed = new ArrayList<>();
+        for (String currency : previous.getCurrencies()) {
+            if (!published.contains(currency)) {
+                removed.add(currency);
+            }
+        }
+        if (rates != null && rates.isEmpty() && Collections.disjoint(bases, removed)) {
+            return null;
+        }
+        return new RatesUpdate(published.getVersion(), published.getPublishedAt(), changed, removed, rates);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shardExecutors.forEach(ExecutorService::shutdownNow);
+        shards.forEach(shard -> shard.forEach(subscriber -> subscriber.emitter().complete()));
+    }
+
+    //'sent' - the last snapshot the subscriber's updates were computed up to
+    private record Subscriber(long id, Set<String> bases, SseEmitter emitter, AtomicReference<ExchangeRatesSnapshot> sent) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.exchange.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+// Cluster-wide refresh leadership: a session-level Postgres advisory lock held for one refresh cycle.
+// The lock lives on its own connection outside the pool, so a node that dies mid-cycle drops the connection and
+// the lock with it. Server-side keepalives make that happen within about a minute even if its host disappears
+@Component
+@Slf4j
+public class RefreshLeadership {
+
+    private final HikariDataSource dataSource;
+
+    @Value("${refresh.leader.lockKey:4242001}")
+    long lockKey = 4242001;
+
+    //how long a node waits for a busy leader before it gives up the cycle
+    @Value("${refresh.leader.maxWait:PT10M}")
+    Duration maxWait = Duration.ofMinutes(10);
+
+    @Value("${refresh.leader.pollInterval:PT5S}")
+    Duration pollInterval = Duration.ofSeconds(5);
+
+    public RefreshLeadership(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // Waits while another node holds the lock. Null when it is still held after 'maxWait'.
+    // One connection is opened for the whole wait and kept by the lease, polls don't reconnect
+    public Lease acquire() throws InterruptedException {
+        Connection connection = connect();
+        boolean acquired = false;
+        try {
+            long deadline = System.nanoTime() + maxWait.toNanos();
+            while (!tryLock(connection)) {
+                if (System.nanoTime() + pollInterval.toNanos() > deadline) {
+                    return null;
+                }
+                log.debug("Refresh lock is held by another node, waiting for it");
+                Thread.sleep(pollInterval.toMillis());
+            }
+            acquired = true;
+            return new Lease(connection, lockKey);
+        } finally {
+            if (!acquired) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    Connection connect() {
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection(dataSource.getJdbcUrl(), dataSource.getUsername(), dataSource.getPassword());
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET tcp_keepalives_idle = 30");
+                statement.execute("SET tcp_keepalives_interval = 10");
+                statement.execute("SET tcp_keepalives_count = 3");
+            }
+            return connection;
+        } catch (SQLException ex) {
+            closeQuietly(connection);
+            throw new IllegalStateException("Refresh lock connection can't be opened", ex);
+        }
+    }
+
+    boolean tryLock(Connection connection) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockKey);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Refresh lock can't be acquired", ex);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            log.debug("Exception on closing the refresh lock connection. Exception message '{}'", ex.getMessage());
+        }
+    }
+
+    // Held leadership, released by close
+    public static class Lease implements AutoCloseable {
+
+        private final Connection connection;
+        private final long lockKey;
+
+        Lease(Connection connection, long lockKey) {
+            this.connection = connection;
+            this.lockKey = lockKey;
+        }
+
+        @Override
+        public void close() {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                statement.setLong(1, lockKey);
+                statement.execute();
+            } catch (SQLException ex) {
+                //closing the session releases the lock anyway
+                log.warn("Exception on releasing the refresh lock. Exception message '{}'", ex.getMessage());
+            } finally {
+                closeQuietly(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.exchange.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Plans refresh runs one at a time: the regular interval after a run that succeeded, exponential backoff from
+// 'retryDelay' after a failed or partly failed one. Every delay is stretched by a random part of 'jitter', so nodes
+// started together don't hit the third party and the refresh lock in step
+@Component
+@Slf4j
+public class RefreshScheduler {
+
+    // Result of one run, decides the delay of the next one
+    public enum Outcome {
+        //nothing was fetched, the cache was reloaded from the DB only
+        IDLE,
+        SUCCEEDED,
+        //some currencies failed and are queued for a retry
+        PARTIAL,
+        FAILED
+    }
+
+    private final ScheduledExecutorService executor;
+    private volatile Supplier<Outcome> task;
+    //epoch millis of the planned run, -1 until the first one is planned
+    private volatile long nextRunAt = -1;
+    //runs in a row that didn't succeed, touched by one run at a time
+    private int failures;
+
+    @Value("${scheduler.fixedRate:PT1H}")
+    Duration interval = Duration.ofHours(1);
+
+    @Value("${refresh.scheduler.retryDelay:PT30S}")
+    Duration retryDelay = Duration.ofSeconds(30);
+
+    @Value("${refresh.scheduler.maxBackoff:PT30M}")
+    Duration maxBackoff = Duration.ofMinutes(30);
+
+    //share of a delay added to it at random
+    @Value("${refresh.scheduler.jitter:0.05}")
+    double jitter = 0.05;
+
+    public RefreshScheduler() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("refresh-scheduler-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    // Plans the first run of 'task' after 'firstDelay', every next one after the outcome of the previous
+    public void start(Supplier<Outcome> task, Duration firstDelay) {
+        this.task = task;
+        schedule(firstDelay);
+    }
+
+    // Runs 'task' once on the calling thread, then plans the next run after its outcome
+    public void startBlocking(Supplier<Outcome> task) {
+        this.task = task;
+        run();
+    }
+
+    // Epoch millis of the planned run, -1 when none is planned
+    public long getNextRunAt() {
+        return nextRunAt;
+    }
+
+    // Delay before the run that follows 'outcome', jitter included
+    Duration delayAfter(Outcome outcome) {
+        long delay;
+        if (outcome == Outcome.IDLE || outcome == Outcome.SUCCEEDED) {
+            failures = 0;
+            delay = interval.toMillis();
+        } else {
+            failures++;
+            //doubled per failure in a row, the shift is capped so it can't overflow
+            delay = Math.min(maxBackoff.toMillis(), retryDelay.toMillis() << Math.min(failures - 1, 20));
+        }
+        return Duration.ofMillis(delay + (long) (delay * jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        nextRunAt = -1;
+    }
+
+    void run() {
+        Outcome outcome = Outcome.FAILED;
+        try {
+            outcome = task.get();
+        } catch (RuntimeException ex) {
+            log.error("Refresh run failed. Exception message '{}'", ex.getMessage(), ex);
+        } catch (Error ex) {
+            //the executor keeps an error to itself, so it is logged here and goes on once the next run is planned
+            log.error("Refresh run failed with an error '{}'", ex.getMessage(), ex);
+            throw ex;
+        } finally {
+            Duration delay = delayAfter(outcome);
+            log.debug("Refresh run finished with {}, the next one in {}", outcome, delay);
+            schedule(delay);
+        }
+    }
+
+    private void schedule(Duration delay) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        nextRunAt = System.currentTimeMillis() + delay.toMillis();
+        executor.schedule(this::run, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,79 @@
+package com.exchange.service;
+
+import com.exchange.dtos.ExchangeRate;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.cache.RatesCodec;
+import com.exchange.service.open_exchange_impl.OpenExchangeCurrencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+// JSON bodies of '/exchange-rates/{currency}', plain and gzip, rendered once when a snapshot is published.
+// A currency whose ExchangeRate instance didn't change between snapshots keeps its bodies
+@Component
+public class RenderedExchangeRates {
+
+    private final ObjectWriter writer;
+    private final AtomicReference<Rendered> current = new AtomicReference<>(new Rendered(-1, Map.of()));
+
+    public RenderedExchangeRates(ObjectMapper objectMapper, OpenExchangeCurrencyService currencyService) {
+        //rates in code order, so the bytes and their ETag don't depend on the map a node happened to build
+        this.writer = objectMapper.writer(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        currencyService.addSnapshotListener((previous, published) -> onPublish(published));
+        onPublish(currencyService.getSnapshot());
+    }
+
+    // Pre-rendered body of this exact rate, rendered on the spot if the rate is newer than the last render
+    public Body get(String currency, ExchangeRate rate) {
+        Body body = current.get().bodies().get(currency);
+        return body != null && body.rate() == rate ? body : render(rate);
+    }
+
+    void onPublish(ExchangeRatesSnapshot snapshot) {
+        Rendered previous = current.get();
+        if (previous.version() >= snapshot.getVersion()) {
+            return;
+        }
+        Map<String, Body> bodies = new HashMap<>(snapshot.size() * 2);
+        snapshot.getRates().forEach((currency, rate) -> {
+            Body body = previous.bodies().get(currency);
+            bodies.put(currency, body != null && body.rate() == rate ? body : render(rate));
+        });
+        Rendered rendered = new Rendered(snapshot.getVersion(), bodies);
+        //an older snapshot rendered late must not replace a newer one
+        current.accumulateAndGet(rendered, (a, b) -> a.version() >= b.version() ? a : b);
+    }
+
+    Body render(ExchangeRate rate) {
+        try {
+            byte[] json = writer.writeValueAsBytes(rate);
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 2);
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                out.write(json);
+            }
+            return new Body(rate, json, gzip.toByteArray());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // 'tag' is derived from the JSON bytes, so every node serving the same bytes serves the same ETag
+    public record Body(ExchangeRate rate, byte[] json, byte[] gzip, String tag) {
+
+        public Body(ExchangeRate rate, byte[] json, byte[] gzip) {
+            this(rate, json, gzip, rate.getTimestamp() + "-" + Long.toHexString(RatesCodec.fingerprint(json)));
+        }
+    }
+
+    private record Rendered(long version, Map<String, Body> bodies) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.exchange.service.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Append-only interner of currency codes into dense int indices. Indices are stable for the life of the instance,
+// so rows built at different times can share one column layout
+public class CurrencyIndex {
+
+    private static final int ALPHA3_SIZE = 26 * 26 * 26;
+
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+    //direct-addressed lookup for ISO-like 'AAA'..'ZZZ' codes, so the hot path doesn't hash. -1 means 'ask the map'
+    private final int[] alpha3 = new int[ALPHA3_SIZE];
+    private volatile String[] codes = new String[0];
+
+    public CurrencyIndex() {
+        Arrays.fill(alpha3, -1);
+    }
+
+    public int indexOf(String code) {
+        int key = alpha3Key(code);
+        if (key >= 0) {
+            int index = alpha3[key];
+            if (index >= 0) {
+                return index;
+            }
+        }
+        Integer index = indices.get(code);
+        return index == null ? -1 : index;
+    }
+
+    public int intern(String code) {
+        Integer index = indices.get(code);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            index = indices.get(code);
+            if (index != null) {
+                return index;
+            }
+            String[] current = codes;
+            String[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = code;
+            //publish the code before the index, so any visible index resolves to a code
+            codes = extended;
+            indices.put(code, current.length);
+            int key = alpha3Key(code);
+            if (key >= 0) {
+                alpha3[key] = current.length;
+            }
+            return current.length;
+        }
+    }
+
+    // Same as intern(String), but known three-letter codes are resolved from the bytes without building a String
+    public int intern(byte[] ascii, int length) {
+        if (length == 3) {
+            int a = ascii[0] - 'A';
+            int b = ascii[1] - 'A';
+            int c = ascii[2] - 'A';
+            if ((a | b | c) >= 0 && a < 26 && b < 26 && c < 26) {
+                int index = alpha3[(a * 26 + b) * 26 + c];
+                if (index >= 0) {
+                    return index;
+                }
+            }
+        }
+        return intern(new String(ascii, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    public String codeAt(int index) {
+        return codes[index];
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    private static int alpha3Key(String code) {
+        if (code == null || code.length() != 3) {
+            return -1;
+        }
+        int a = code.charAt(0) - 'A';
+        int b = code.charAt(1) - 'A';
+        int c = code.charAt(2) - 'A';
+        if ((a | b | c) < 0 || a >= 26 || b >= 26 || c >= 26) {
+            return -1;
+        }
+        return (a * 26 + b) * 26 + c;
+    }
+}
@@ -0,0 +1,58 @@
+package com.exchange.service.cache;
+
+import com.exchange.dtos.ExchangeRate;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable view of the rate cache. A new instance is published for every change, readers never see partial updates
+public final class ExchangeRatesSnapshot {
+
+    public static final ExchangeRatesSnapshot EMPTY = new ExchangeRatesSnapshot(0, 0, Collections.emptyMap());
+
+    private final long version;
+    private final long publishedAt;
+    private final Map<String, ExchangeRate> rates;
+    private final Set<String> currencies;
+
+    ExchangeRatesSnapshot(long version, Map<String, ExchangeRate> rates) {
+        this(version, System.currentTimeMillis(), rates);
+    }
+
+    private ExchangeRatesSnapshot(long version, long publishedAt, Map<String, ExchangeRate> rates) {
+        this.version = version;
+        this.publishedAt = publishedAt;
+        this.rates = Collections.unmodifiableMap(rates);
+        this.currencies = Collections.unmodifiableSet(this.rates.keySet());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Epoch millis of the moment this snapshot replaced the previous one
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    public ExchangeRate get(String currency) {
+        return rates.get(currency);
+    }
+
+    public boolean contains(String currency) {
+        return rates.containsKey(currency);
+    }
+
+    public Set<String> getCurrencies() {
+        return currencies;
+    }
+
+    public Map<String, ExchangeRate> getRates() {
+        return rates;
+    }
+
+    public int size() {
+        return rates.size();
+    }
+}
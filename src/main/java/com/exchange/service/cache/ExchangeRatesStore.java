@@ -0,0 +1,101 @@
+package com.exchange.service.cache;
+
+import com.exchange.dtos.ExchangeRate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+// Copy-on-write holder of the current snapshot. Writers build a new snapshot and publish it atomically,
+// readers only dereference the current one and never lock
+@Slf4j
+public class ExchangeRatesStore {
+
+    private final AtomicReference<ExchangeRatesSnapshot> current = new AtomicReference<>(ExchangeRatesSnapshot.EMPTY);
+    private final CurrencyIndex index = new CurrencyIndex();
+    private final List<BiConsumer<ExchangeRatesSnapshot, ExchangeRatesSnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    public CurrencyIndex getIndex() {
+        return index;
+    }
+
+    public ExchangeRatesSnapshot snapshot() {
+        return current.get();
+    }
+
+    // Called with (previous, published) on the publishing thread after every new version.
+    // Concurrent publishes can be reported out of order, listeners compare versions
+    public void addListener(BiConsumer<ExchangeRatesSnapshot, ExchangeRatesSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    public ExchangeRate get(String currency) {
+        return current.get().get(currency);
+    }
+
+    public boolean contains(String currency) {
+        return current.get().contains(currency);
+    }
+
+    public ExchangeRatesSnapshot replaceAll(Map<String, ExchangeRate> rates) {
+        Map<String, ExchangeRate> compacted = new HashMap<>(rates.size() * 2);
+        rates.forEach((currency, rate) -> compacted.put(currency, compact(rate)));
+        return publish(prev -> new ExchangeRatesSnapshot(prev.getVersion() + 1, compacted));
+    }
+
+    public ExchangeRatesSnapshot put(String currency, ExchangeRate rate) {
+        ExchangeRate compacted = compact(rate);
+        return publish(prev -> {
+            Map<String, ExchangeRate> rates = new HashMap<>(prev.getRates());
+            rates.put(currency, compacted);
+            return new ExchangeRatesSnapshot(prev.getVersion() + 1, rates);
+        });
+    }
+
+    // Publishes upserts and removals as one new version, nothing is published when there is nothing to change
+    public ExchangeRatesSnapshot apply(Map<String, ExchangeRate> upserts, Collection<String> removals) {
+        if (upserts.isEmpty() && removals.isEmpty()) {
+            return current.get();
+        }
+        Map<String, ExchangeRate> compacted = new HashMap<>(upserts.size() * 2);
+        upserts.forEach((currency, rate) -> compacted.put(currency, compact(rate)));
+        return publish(prev -> {
+            Map<String, ExchangeRate> rates = new HashMap<>(prev.getRates());
+            rates.putAll(compacted);
+            removals.forEach(rates::remove);
+            return new ExchangeRatesSnapshot(prev.getVersion() + 1, rates);
+        });
+    }
+
+    private ExchangeRatesSnapshot publish(UnaryOperator<ExchangeRatesSnapshot> update) {
+        ExchangeRatesSnapshot prev;
+        ExchangeRatesSnapshot next;
+        do {
+            prev = current.get();
+            next = update.apply(prev);
+        } while (!current.compareAndSet(prev, next));
+        for (BiConsumer<ExchangeRatesSnapshot, ExchangeRatesSnapshot> listener : listeners) {
+            try {
+                listener.accept(prev, next);
+            } catch (RuntimeException ex) {
+                log.error("Snapshot listener failed on version {}. Exception message '{}'", next.getVersion(), ex.getMessage(), ex);
+            }
+        }
+        return next;
+    }
+
+    // Moves boxed rates into a primitive row over the shared index
+    ExchangeRate compact(ExchangeRate rate) {
+        if (rate == null || rate.getRates() == null
+                || rate.getRates() instanceof RateRow row && row.getIndex() == index) {
+            return rate;
+        }
+        return new ExchangeRate(rate.getTimestamp(), rate.getBase(), RateRow.copyOf(index, rate.getRates()));
+    }
+}
@@ -0,0 +1,141 @@
+package com.exchange.service.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Read-only Map view over a primitive row of the rate table. Columns are CurrencyIndex indices, missing rates are NaN.
+// Boxing only happens when the row is iterated as a Map (e.g. on JSON serialization)
+public final class RateRow extends AbstractMap<String, Double> {
+
+    private final CurrencyIndex index;
+    private final double[] rates;
+    private final int size;
+
+    RateRow(CurrencyIndex index, double[] rates) {
+        this.index = index;
+        this.rates = rates;
+        int count = 0;
+        for (double rate : rates) {
+            if (!Double.isNaN(rate)) {
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    public static RateRow copyOf(CurrencyIndex index, Map<String, Double> rates) {
+        if (rates instanceof RateRow row && row.index == index) {
+            return row;
+        }
+        //intern first, so the row is sized for every column it holds
+        int[] columns = new int[rates.size()];
+        double[] values = new double[rates.size()];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : rates.entrySet()) {
+            columns[i] = index.intern(entry.getKey());
+            values[i] = entry.getValue() == null ? Double.NaN : entry.getValue();
+            i++;
+        }
+        double[] row = emptyRow(index.size());
+        for (int j = 0; j < i; j++) {
+            row[columns[j]] = values[j];
+        }
+        return new RateRow(index, row);
+    }
+
+    public static double[] emptyRow(int columns) {
+        double[] row = new double[columns];
+        Arrays.fill(row, Double.NaN);
+        return row;
+    }
+
+    // Cross rates against another currency of this row: rate(base -> x) = rate(this -> x) / rate(this -> base).
+    // Returns null when the row has no usable rate for the new base
+    public RateRow rebase(String base) {
+        double pivot = rate(base);
+        if (Double.isNaN(pivot) || pivot == 0) {
+            return null;
+        }
+        double[] row = new double[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            row[i] = rates[i] / pivot;
+        }
+        return new RateRow(index, row);
+    }
+
+    // Returns NaN when the currency has no rate in this row
+    public double rate(String currency) {
+        return rate(index.indexOf(currency));
+    }
+
+    public double rate(int column) {
+        return column < 0 || column >= rates.length ? Double.NaN : rates[column];
+    }
+
+    public CurrencyIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public Double get(Object key) {
+        if (!(key instanceof String code)) {
+            return null;
+        }
+        double rate = rate(code);
+        return Double.isNaN(rate) ? null : rate;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String code && !Double.isNaN(rate(code));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Double>> iterator() {
+                return new Iterator<>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < rates.length && Double.isNaN(rates[from])) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < rates.length;
+                    }
+
+                    @Override
+                    public Entry<String, Double> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Double> entry = new SimpleImmutableEntry<>(index.codeAt(next), rates[next]);
+                        next = advance(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
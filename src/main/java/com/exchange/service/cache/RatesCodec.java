@@ -0,0 +1,95 @@
+package com.exchange.service.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+// Packed binary form of a rate row, stored in 'currencies.rates':
+// [version:byte][count:short] then per entry [codeLength:byte][code:ASCII][rate:double], big-endian.
+// Entries are written in code order, so equal rates give equal bytes whatever order a node interned the codes in.
+// Decoding goes straight into a primitive row, without a JSON parser or boxed values
+public final class RatesCodec {
+
+    static final byte VERSION = 1;
+
+    private RatesCodec() {
+    }
+
+    public static byte[] encode(Map<String, Double> rates) {
+        String[] codes = rates.keySet().toArray(new String[0]);
+        Arrays.sort(codes);
+        int size = 3;
+        for (String code : codes) {
+            size += 1 + code.length() + Double.BYTES;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.putShort((short) codes.length);
+        for (String code : codes) {
+            Double rate = rates.get(code);
+            buffer.put((byte) code.length());
+            buffer.put(code.getBytes(StandardCharsets.US_ASCII));
+            buffer.putDouble(rate == null ? Double.NaN : rate);
+        }
+        return buffer.array();
+    }
+
+    // 64-bit FNV-1a of the packed row, stored next to it to tell a changed row from a re-fetched one
+    public static long fingerprint(byte[] packed) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : packed) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Rate of one code straight from the packed row, NaN when the row has no such code
+    public static double rateOf(byte[] packed, String code) {
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported rates format version " + version);
+        }
+        byte[] wanted = code.getBytes(StandardCharsets.US_ASCII);
+        int count = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.get() & 0xFF;
+            int start = buffer.position();
+            buffer.position(start + length);
+            if (Arrays.equals(packed, start, start + length, wanted, 0, wanted.length)) {
+                return buffer.getDouble();
+            }
+            buffer.position(buffer.position() + Double.BYTES);
+        }
+        return Double.NaN;
+    }
+
+    public static RateRow decode(CurrencyIndex index, byte[] packed) {
+        return decode(index, ByteBuffer.wrap(packed));
+    }
+
+    // Reads one row from the buffer's position, leaves the position after it
+    public static RateRow decode(CurrencyIndex index, ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported rates format version " + version);
+        }
+        int count = buffer.getShort() & 0xFFFF;
+        int[] columns = new int[count];
+        double[] values = new double[count];
+        byte[] code = new byte[255];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.get() & 0xFF;
+            buffer.get(code, 0, length);
+            columns[i] = index.intern(code, length);
+            values[i] = buffer.getDouble();
+        }
+        double[] row = RateRow.emptyRow(index.size());
+        for (int i = 0; i < count; i++) {
+            row[columns[i]] = values[i];
+        }
+        return new RateRow(index, row);
+    }
+}
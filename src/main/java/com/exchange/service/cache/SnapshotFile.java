@@ -0,0 +1,101 @@
+package com.exchange.service.cache;
+
+import com.exchange.dtos.ExchangeRate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Local copy of the cache for a warm start:
+// [magic:int][version:byte][watermark:long][count:int] then per currency [codeLength:byte][code:ASCII][timestamp:long]
+// and its rates packed by RatesCodec, big-endian. It is read through a memory mapping, rows are decoded in place
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x45585253;
+    static final byte VERSION = 1;
+
+    private SnapshotFile() {
+    }
+
+    // Cache content restored from the file, 'watermark' is the highest 'updated_at' it includes
+    public record Content(long watermark, Map<String, ExchangeRate> rates) {
+    }
+
+    // Written next to the target and moved over it, a reader never sees a partly written file
+    public static void write(Path path, ExchangeRatesSnapshot snapshot, long watermark) throws IOException {
+        List<byte[]> codes = new ArrayList<>(snapshot.size());
+        List<ExchangeRate> rates = new ArrayList<>(snapshot.size());
+        List<byte[]> packed = new ArrayList<>(snapshot.size());
+        int size = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+        for (Map.Entry<String, ExchangeRate> entry : snapshot.getRates().entrySet()) {
+            byte[] code = entry.getKey().getBytes(StandardCharsets.US_ASCII);
+            byte[] row = RatesCodec.encode(entry.getValue().getRates());
+            codes.add(code);
+            rates.add(entry.getValue());
+            packed.add(row);
+            size += 1 + code.length + Long.BYTES + row.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putLong(watermark);
+        buffer.putInt(codes.size());
+        for (int i = 0; i < codes.size(); i++) {
+            buffer.put((byte) codes.get(i).length);
+            buffer.put(codes.get(i));
+            buffer.putLong(rates.get(i).getTimestamp());
+            buffer.put(packed.get(i));
+        }
+        buffer.flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Rates are decoded into rows of 'index'. Throws on a missing file, an unknown version or a truncated file
+    public static Content read(Path path, CurrencyIndex index) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot file: " + path);
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot file version " + version);
+        }
+        long watermark = buffer.getLong();
+        int count = buffer.getInt();
+        Map<String, ExchangeRate> rates = new HashMap<>(count * 2);
+        byte[] code = new byte[255];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.get() & 0xFF;
+            buffer.get(code, 0, length);
+            String currency = new String(code, 0, length, StandardCharsets.US_ASCII);
+            long timestamp = buffer.getLong();
+            rates.put(currency, new ExchangeRate(timestamp, currency, RatesCodec.decode(index, buffer)));
+        }
+        return new Content(watermark, rates);
+    }
+}
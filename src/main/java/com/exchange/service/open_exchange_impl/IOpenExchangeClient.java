@@ -0,0 +1,19 @@
+package com.exchange.service.open_exchange_impl;
+
+import org.springframework.core.ParameterizedTypeReference;
+
+import java.net.URI;
+
+// HTTP transport of OpenExchangeExternalAPIService, selected with 'openExchange.client'
+public interface IOpenExchangeClient {
+
+    <T> T get(URI uri, ParameterizedTypeReference<T> responseType);
+
+    // GET revalidating a held representation: non-null 'etag' and 'lastModified' are sent as If-None-Match and
+    // If-Modified-Since. A 304 answer comes back as 'notModified' without a body
+    <T> ConditionalResponse<T> getConditional(URI uri, ParameterizedTypeReference<T> responseType, String etag, String lastModified);
+
+    // Body and validators of a conditional GET, validators are null when the provider sent none
+    record ConditionalResponse<T>(T body, String etag, String lastModified, boolean notModified) {
+    }
+}
@@ -1,29 +1,47 @@
 package com.exchange.service.open_exchange_impl;
 
+import com.exchange.dtos.ConversionRequest;
+import com.exchange.dtos.ConversionResult;
 import com.exchange.dtos.ExchangeRate;
 import com.exchange.repository.BulkDBUpdater;
 import com.exchange.repository.CurrencyRepository;
 import com.exchange.repository.entities.Currency;
 import com.exchange.service.ConfigurationService;
+import com.exchange.service.CurrencyChangeNotifications;
+import com.exchange.service.CurrencyMetrics;
 import com.exchange.service.ICurrencyService;
+import com.exchange.service.RateHistoryService;
+import com.exchange.service.RefreshLeadership;
+import com.exchange.service.RefreshScheduler;
 import com.exchange.service.TransactionalInvoker;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.cache.ExchangeRatesStore;
+import com.exchange.service.cache.RateRow;
+import com.exchange.service.cache.RatesCodec;
+import com.exchange.service.cache.SnapshotFile;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.mutable.MutableBoolean;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -36,141 +54,492 @@ public class OpenExchangeCurrencyService implements ICurrencyService {
     private final ConfigurationService configurationService;
     private final OpenExchangeExternalAPIService openExchangeExternalAPIService;
     private final TransactionalInvoker transactionalInvoker;
+    private final CurrencyMetrics metrics;
+    private final RateHistoryService rateHistory;
+    private final RefreshLeadership refreshLeadership;
+    private final RefreshScheduler refreshScheduler;
+    private final CurrencyChangeNotifications changeNotifications;
     final ExecutorService workersExecutor;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    Map<String, ExchangeRate> exchangeRates = new HashMap<>();
-
-    private static final TypeReference<Map<String, Double>> currencyRateType = new TypeReference<>() {
-    };
+    final ExchangeRatesStore exchangeRates = new ExchangeRatesStore();
+    final Map<String, CompletableFuture<ExchangeRate>> inFlight = new ConcurrentHashMap<>();
+    //highest 'updated_at' applied to the cache, -1 until the first full load
+    volatile long cacheWatermark = -1;
 
     @Value("${scheduler.fixedRate}")
     private Duration interval;
 
+    @Value("${openExchange.rateStrategy:TRIANGULATED}")
+    RateFetchStrategy rateStrategy = RateFetchStrategy.TRIANGULATED;
+
+    @Value("${openExchange.refresh.maxConcurrency:16}")
+    int maxConcurrency = 16;
+
+    @Value("${openExchange.refresh.deadline:PT5M}")
+    Duration refreshDeadline = Duration.ofMinutes(5);
+
+    //more failed currencies than this aren't retried one by one, the next cycle is a full refresh
+    @Value("${openExchange.refresh.maxRetryCurrencies:50}")
+    int maxRetryCurrencies = 50;
+
+    //rows committed out of 'updated_at' order (a refresh stamps its start, addCurrency the moment it saves) are
+    //still picked up by the incremental reload when they are at most this much older than the watermark
+    @Value("${cache.reloadLookback:PT10M}")
+    Duration reloadLookback = Duration.ofMinutes(10);
+
+    //the node that refreshed last ticks a moment before a full interval has passed, its next refresh is due anyway
+    @Value("${refresh.leader.dueSlack:PT1M}")
+    Duration dueSlack = Duration.ofMinutes(1);
+
+    //the refresh lock is held while the outcome of a cycle can't be stored, up to 'flushTimeout'
+    @Value("${refresh.leader.flushTimeout:PT1M}")
+    Duration flushTimeout = Duration.ofMinutes(1);
+
+    @Value("${refresh.leader.flushRetryDelay:PT1S}")
+    Duration flushRetryDelay = Duration.ofSeconds(1);
+
+    //local snapshot file of the cache for a warm start, empty - not kept
+    @Value("${snapshot.path:}")
+    String snapshotPath = "";
+
     public OpenExchangeCurrencyService(OpenExchangeExternalAPIService openExchangeExternalAPIService,
                                        TransactionalInvoker transactionalInvoker,
                                        ConfigurationService configurationService,
                                        CurrencyRepository currencyRepository,
-                                       BulkDBUpdater bulkDBUpdater) {
+                                       BulkDBUpdater bulkDBUpdater,
+                                       CurrencyMetrics metrics,
+                                       RateHistoryService rateHistory,
+                                       RefreshLeadership refreshLeadership,
+                                       RefreshScheduler refreshScheduler,
+                                       CurrencyChangeNotifications changeNotifications,
+                                       @Qualifier("refreshExecutor") ExecutorService workersExecutor) {
         this.openExchangeExternalAPIService = openExchangeExternalAPIService;
         this.transactionalInvoker = transactionalInvoker;
         this.configurationService = configurationService;
         this.currencyRepository = currencyRepository;
         this.bulkDBUpdater = bulkDBUpdater;
-        workersExecutor = Executors.newFixedThreadPool(4);
+        this.metrics = metrics;
+        this.rateHistory = rateHistory;
+        this.refreshLeadership = refreshLeadership;
+        this.refreshScheduler = refreshScheduler;
+        this.changeNotifications = changeNotifications;
+        this.workersExecutor = workersExecutor;
+        metrics.bindCache(exchangeRates);
+        metrics.bindNextRefresh(this::timeToNextRefresh);
+        //another node changed 'currencies'
+        changeNotifications.addListener(this::reloadCachedCurrenciesData);
     }
 
     @EventListener(ApplicationReadyEvent.class)
     public void init() {
-        //if - failed on the last iteration || last update was too long ago
-        if (configurationService.getOpenExchangeFailOnLastIteration() ||
-                System.currentTimeMillis() - configurationService.getFetchLastTimestamp() > interval.toMillis()) {
-            //case yes - fetch data from the third party
-            updateExchangeRates();
-        } else {
-            //case no - fetch cached data from db
-            initCachedCurrenciesData();
+        //a local snapshot serves requests right away, the DB and the third party are caught up with in the background
+        if (restoreLocalSnapshot()) {
+            refreshScheduler.start(this::reconcile, Duration.ZERO);
+            return;
+        }
+        //a failed first refresh is retried with backoff like any other
+        refreshScheduler.startBlocking(this::reconcile);
+    }
+
+    // One refresh cycle of the cluster, run by the refresh scheduler: the node holding the refresh lock fetches when
+    // the cycle is due or retries the currencies that failed in it, the others wait for it and reload from the DB.
+    // If the leader dies mid-cycle its lock is released, a waiting node takes over and finds the cycle still due
+    public RefreshScheduler.Outcome reconcile() {
+        try (RefreshLeadership.Lease lease = refreshLeadership.acquire()) {
+            if (lease == null) {
+                log.warn("Refresh lock is held by another node for too long, cache is reloaded from the DB only");
+                reloadCachedCurrenciesData();
+                return RefreshScheduler.Outcome.IDLE;
+            }
+            //another node could have refreshed while this one was waiting
+            configurationService.reload();
+            Set<String> retryCurrencies = configurationService.getOpenExchangeRetryCurrencies();
+            boolean refreshDue = isRefreshDue();
+            if (!refreshDue && retryCurrencies.isEmpty()) {
+                //case no - fetch cached data from db, only rows changed after the local snapshot if there is one
+                reloadCachedCurrenciesData();
+                return RefreshScheduler.Outcome.IDLE;
+            }
+            RefreshScheduler.Outcome outcome;
+            try {
+                //case yes - fetch data from the third party, case some currencies failed - fetch only them
+                outcome = refreshDue ? updateExchangeRates() : retryFailedCurrencies(retryCurrencies);
+            } catch (RuntimeException | Error ex) {
+                //stored as failed, so the next leader runs the cycle again
+                configurationService.setOpenExchangeFailOnLastIteration(true);
+                flushAfterFailure(ex);
+                throw ex;
+            }
+            //the next leader reads the outcome from the table, so it is stored before this node releases the lock
+            flushBeforeRelease();
+            return outcome;
+        } catch (InterruptedException ex) {
+            log.error("Interrupted!", ex);
+            Thread.currentThread().interrupt();
+            return RefreshScheduler.Outcome.FAILED;
+        }
+    }
+
+    void flushBeforeRelease() throws InterruptedException {
+        long deadline = System.nanoTime() + flushTimeout.toNanos();
+        while (!configurationService.flush()) {
+            if (System.nanoTime() + flushRetryDelay.toNanos() > deadline) {
+                throw new IllegalStateException("Refresh outcome can't be stored, the refresh lock is released without it");
+            }
+            log.warn("Refresh outcome can't be stored, the refresh lock is held until it is");
+            Thread.sleep(flushRetryDelay.toMillis());
+        }
+    }
+
+    // Stores the outcome of a cycle that threw 'failure', which stays the exception thrown
+    private void flushAfterFailure(Throwable failure) {
+        try {
+            flushBeforeRelease();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(ex);
+        } catch (RuntimeException ex) {
+            failure.addSuppressed(ex);
+        }
+    }
+
+    boolean isRefreshDue() {
+        //if - failed on the last iteration as a whole || last update was too long ago
+        return configurationService.getOpenExchangeFailOnLastIteration() && configurationService.getOpenExchangeRetryCurrencies().isEmpty() ||
+                System.currentTimeMillis() - configurationService.getFetchLastTimestamp() > interval.toMillis() - dueSlack.toMillis();
+    }
+
+    public ExchangeRatesSnapshot getSnapshot() {
+        return exchangeRates.snapshot();
+    }
+
+    // Notified with (previous, published) after every new cache snapshot
+    public void addSnapshotListener(BiConsumer<ExchangeRatesSnapshot, ExchangeRatesSnapshot> listener) {
+        exchangeRates.addListener(listener);
+    }
+
+    // Time left until the next refresh in the cluster, zero when it is overdue. The last fetch time is shared by
+    // every node, whichever holds the lock refreshes once it is due. This node's own run counts when it comes earlier
+    public Duration timeToNextRefresh() {
+        long nextRefresh = configurationService.getFetchLastTimestamp() + interval.toMillis();
+        long plannedRun = refreshScheduler.getNextRunAt();
+        if (plannedRun >= 0) {
+            nextRefresh = Math.min(nextRefresh, plannedRun);
         }
+        return Duration.ofMillis(Math.max(0, nextRefresh - System.currentTimeMillis()));
     }
 
     @Override
     public Set<String> getCurrencies() {
-        return exchangeRates.keySet();
+        return exchangeRates.snapshot().getCurrencies();
     }
 
+    // Read from the current snapshot and counted as a cache hit, a miss loads the base
     @Override
     public ExchangeRate getExchangeRates(String currency) {
-        if (exchangeRates.containsKey(currency)) {
-            return exchangeRates.get(currency);
+        String code = currency.toUpperCase(Locale.ROOT);
+        ExchangeRate cached = exchangeRates.get(code);
+        if (cached != null) {
+            metrics.cacheHit();
+            return cached;
         }
+        metrics.cacheMiss();
+        return loadCurrency(code);
+    }
+
+    @Override
+    public void addCurrency(String currency) {
+        String code = currency.toUpperCase(Locale.ROOT);
+        if (exchangeRates.contains(code)) {
+            log.warn("Currency '{}' already exists", code);
+            return;
+        }
+        loadCurrency(code);
+    }
+
+    // Single-flight: concurrent misses for one code share the first caller's fetch-and-persist
+    ExchangeRate loadCurrency(String code) {
+        CompletableFuture<ExchangeRate> flight = new CompletableFuture<>();
+        CompletableFuture<ExchangeRate> existing = inFlight.putIfAbsent(code, flight);
+        if (existing != null) {
+            log.debug("Currency '{}' is already being loaded, waiting for it", code);
+            return awaitFlight(existing);
+        }
+        try {
+            //the previous flight could have finished between the cache miss and putIfAbsent
+            ExchangeRate loaded = exchangeRates.get(code);
+            if (loaded == null) {
+                loaded = fetchAndSaveCurrency(code);
+            }
+            flight.complete(loaded);
+            return loaded;
+        } catch (Throwable ex) {
+            //an Error too, otherwise the callers waiting for the flight would never wake up
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(code, flight);
+        }
+    }
 
-        ExchangeRate rate = openExchangeExternalAPIService.fetchExchangeRate(currency);
+    private ExchangeRate fetchAndSaveCurrency(String code) {
+        ExchangeRate rate = fetchRate(code);
 
         if (rate == null || rate.getBase() == null || rate.getRates().isEmpty()) {
-            log.warn("Currency '{}' not found", currency);
+            log.warn("Currency '{}' not found", code);
             throw new RuntimeException("Currency not found");
         }
 
         //crutch, let's imagine that this IF doesn't exist
-        if (!currency.equals(rate.getBase())) {
-            rate.setBase(currency.toUpperCase());
+        if (!code.equals(rate.getBase())) {
+            rate.setBase(code);
         }
-        prepareAndSaveNewCurrency(currency, rate);
-        return exchangeRates.get(currency.toUpperCase(Locale.ROOT));
+        prepareAndSaveNewCurrency(code, rate);
+        return exchangeRates.get(code);
     }
 
-    @Override
-    public void addCurrency(String currency) {
-        if (exchangeRates.containsKey(currency)) {
-            log.warn("Currency '{}' already exists", currency);
-            return;
+    private static ExchangeRate awaitFlight(CompletableFuture<ExchangeRate> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw ex;
         }
-        ExchangeRate rate = openExchangeExternalAPIService.fetchExchangeRate(currency);
+    }
 
-        if (rate == null || rate.getBase() == null || rate.getRates().isEmpty()) {
-            log.warn("Currency '{}' not found and won't be added", currency);
-            throw new RuntimeException("Currency not found");
+    // Cache only, a pair without cached rate is not fetched. Returns null when the base is unknown
+    @Override
+    public ConversionResult convert(String from, String to, double amount) {
+        ConversionResult result = convert(exchangeRates.snapshot(), from, to, amount);
+        return result.getRate() == null ? null : result;
+    }
+
+    // All conversions of a batch are answered from one snapshot
+    @Override
+    public List<ConversionResult> convert(List<ConversionRequest> requests) {
+        ExchangeRatesSnapshot snapshot = exchangeRates.snapshot();
+        List<ConversionResult> results = new ArrayList<>(requests.size());
+        for (ConversionRequest request : requests) {
+            results.add(convert(snapshot, request.getFrom(), request.getTo(), request.getAmount()));
         }
+        return results;
+    }
 
-        //crutch, let's imagine that this IF doesn't exist
-        if (!currency.equals(rate.getBase())) {
-            rate.setBase(currency.toUpperCase());
+    ConversionResult convert(ExchangeRatesSnapshot snapshot, String from, String to, double amount) {
+        String fromCode = from == null ? null : from.toUpperCase(Locale.ROOT);
+        String toCode = to == null ? null : to.toUpperCase(Locale.ROOT);
+        ExchangeRate base = fromCode == null ? null : snapshot.get(fromCode);
+        double rate = base == null || toCode == null ? Double.NaN : base.rateFor(toCode);
+        if (Double.isNaN(rate)) {
+            return new ConversionResult(0, fromCode, toCode, amount, null, null);
         }
-        prepareAndSaveNewCurrency(currency, rate);
+        return new ConversionResult(base.getTimestamp(), fromCode, toCode, amount, rate, amount * rate);
     }
 
-    @Scheduled(fixedRateString = "${scheduler.fixedRate}")
-    public void updateExchangeRates() {
+    // Refresh from the third party. Runs on the refresh leader only, see reconcile.
+    // Currencies that failed while the rest were stored are queued for a retry
+    public RefreshScheduler.Outcome updateExchangeRates() {
         log.debug("Update exchange rates task is started");
         Thread.currentThread().setName("Scheduler-Currency");
 
+        long startNanos = System.nanoTime();
         long taskTimestamp = System.currentTimeMillis();
         MutableBoolean failOnIteration = new MutableBoolean(false);
+        Set<String> retryCurrencies = new TreeSet<>();
+        Set<String> queuedCurrencies;
         try {
             log.debug("Update exchange rates step 1");
-            Map<String, String> currentCurrencies = getCurrenciesFromOpenExchange(failOnIteration);
+            Map<String, String> currentCurrencies = metrics.recordStep("catalogue", () -> getCurrenciesFromOpenExchange(failOnIteration));
 
             log.debug("Update exchange rates step 2");
-            List<Currency> entitiesList = prepareEntitiesUsingThirdParty(taskTimestamp, currentCurrencies, failOnIteration);
+            List<Currency> entitiesList = metrics.recordStep("prepare", () -> prepareEntities(taskTimestamp, currentCurrencies, failOnIteration));
 
             log.debug("Update exchange rates step 3");
-            updateDataInBulk(failOnIteration, entitiesList);
+            metrics.recordStep("bulk_update", () -> updateDataInBulk(failOnIteration, entitiesList));
+            retryCurrencies.addAll(notFetched(currentCurrencies, entitiesList));
 
             log.debug("Update exchange rates step 4");
-            cleanNotRelevantData(taskTimestamp, failOnIteration);
+            //failed currencies keep their stored rates until they are retried
+            metrics.recordStep("cleanup", () -> cleanNotRelevantData(taskTimestamp, retryCurrencies, failOnIteration));
 
         } finally {
             configurationService.setOpenExchangeFailOnLastIteration(failOnIteration.getValue());
+            queuedCurrencies = queueForRetry(retryCurrencies);
+            configurationService.setOpenExchangeRetryCurrencies(queuedCurrencies);
             configurationService.setFetchLastTimestamp(taskTimestamp);
-            initCachedCurrenciesData();
+            metrics.recordStep("cache_reload", this::reloadCachedCurrenciesData);
+            changeNotifications.notifyChanged();
+            metrics.recordRefresh(startNanos, failOnIteration.getValue());
 
             log.debug("Update exchange rates task is finished");
         }
+        return outcome(failOnIteration, queuedCurrencies);
     }
 
-    List<Currency> prepareEntitiesUsingThirdParty(long taskTimestamp, Map<String, String> currentCurrencies, MutableBoolean failOnIteration) {
-        List<Currency> entitiesList = new CopyOnWriteArrayList<>();
+    // The queue is stored in one 'configuration' value, so it is bounded. Failed currencies over the bound
+    // keep their stored rates all the same, the failed iteration makes the next cycle a full refresh
+    private Set<String> queueForRetry(Set<String> failed) {
+        if (failed.size() <= maxRetryCurrencies) {
+            return failed;
+        }
+        log.warn("{} currencies failed, more than {} are not retried one by one", failed.size(), maxRetryCurrencies);
+        return Set.of();
+    }
 
-        CountDownLatch countDownLatch = new CountDownLatch(currentCurrencies.size());
+    // Fetches only the currencies queued by the last iteration, those failing again stay queued.
+    // The iteration keeps its timestamp, so the next full refresh isn't postponed
+    RefreshScheduler.Outcome retryFailedCurrencies(Set<String> currencies) {
+        log.info("Retrying {} currencies that failed on the last iteration", currencies.size());
+        long startNanos = System.nanoTime();
+        long taskTimestamp = System.currentTimeMillis();
+        MutableBoolean failOnIteration = new MutableBoolean(false);
+        Set<String> retryCurrencies = new TreeSet<>(currencies);
+        try {
+            Map<String, String> catalogue = getCurrenciesFromOpenExchange(failOnIteration);
+            //a currency dropped from the catalogue meanwhile is removed by the next full refresh
+            Map<String, String> retried = new HashMap<>();
+            currencies.stream().filter(catalogue::containsKey).forEach(code -> retried.put(code, catalogue.get(code)));
+
+            List<Currency> entitiesList = prepareEntities(taskTimestamp, retried, failOnIteration);
+            //a retried currency is seen by the cycle it failed in, so its history point lines up with the other
+            //currencies of that cycle, series join them on the same 'observed_at'
+            long cycleTimestamp = configurationService.getFetchLastTimestamp();
+            if (cycleTimestamp > 0) {
+                entitiesList.forEach(currency -> currency.setLastSeenAt(cycleTimestamp));
+            }
+            updateDataInBulk(failOnIteration, entitiesList);
+            retryCurrencies = notFetched(retried, entitiesList);
+        } finally {
+            configurationService.setOpenExchangeFailOnLastIteration(failOnIteration.getValue() || !retryCurrencies.isEmpty());
+            configurationService.setOpenExchangeRetryCurrencies(retryCurrencies);
+            reloadCachedCurrenciesData();
+            changeNotifications.notifyChanged();
+            metrics.recordRetry(startNanos, failOnIteration.getValue());
+        }
+        return outcome(failOnIteration, retryCurrencies);
+    }
 
-        for (Map.Entry<String, String> entry : currentCurrencies.entrySet()) {
-            Runnable task = prepareCurrencyDataFetchTask(taskTimestamp, failOnIteration, entitiesList, countDownLatch, entry);
-            workersExecutor.submit(task);
+    List<Currency> prepareEntities(long taskTimestamp, Map<String, String> currencies, MutableBoolean failOnIteration) {
+        return rateStrategy == RateFetchStrategy.PER_BASE
+                ? prepareEntitiesUsingThirdParty(taskTimestamp, currencies, failOnIteration)
+                : prepareEntitiesUsingCrossRates(taskTimestamp, currencies, failOnIteration);
+    }
+
+    // Fetches of PER_BASE that failed or didn't finish. A currency without a USD rate isn't retried, it has none
+    // until the next latest rates
+    private Set<String> notFetched(Map<String, String> currencies, List<Currency> entitiesList) {
+        Set<String> failed = new TreeSet<>();
+        if (rateStrategy != RateFetchStrategy.PER_BASE) {
+            return failed;
+        }
+        failed.addAll(currencies.keySet());
+        entitiesList.forEach(entity -> failed.remove(entity.getCurrencyName()));
+        return failed;
+    }
+
+    private static RefreshScheduler.Outcome outcome(MutableBoolean failOnIteration, Set<String> retryCurrencies) {
+        if (failOnIteration.isFalse()) {
+            return RefreshScheduler.Outcome.SUCCEEDED;
         }
+        return retryCurrencies.isEmpty() ? RefreshScheduler.Outcome.FAILED : RefreshScheduler.Outcome.PARTIAL;
+    }
+
+    List<Currency> prepareEntitiesUsingThirdParty(long taskTimestamp, Map<String, String> currentCurrencies, MutableBoolean failOnIteration) {
+        List<Currency> entitiesList = new CopyOnWriteArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>(currentCurrencies.size());
+        //at most 'maxConcurrency' fetches in flight, the whole fan-out is bounded by 'refreshDeadline'
+        Semaphore permits = new Semaphore(maxConcurrency);
+        long deadline = System.nanoTime() + refreshDeadline.toNanos();
 
         try {
-            countDownLatch.await();
+            for (Map.Entry<String, String> entry : currentCurrencies.entrySet()) {
+                if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException();
+                }
+                Runnable task = prepareCurrencyDataFetchTask(taskTimestamp, failOnIteration, entitiesList, permits, entry);
+                tasks.add(workersExecutor.submit(task));
+            }
+            for (Future<?> task : tasks) {
+                task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            log.error("Refresh deadline of {} is reached, {} of {} currencies fetched. Unfinished fetches are cancelled",
+                    refreshDeadline, entitiesList.size(), currentCurrencies.size());
+            failOnIteration.setTrue();
         } catch (InterruptedException e) {
             log.error("Interrupted!", e);
+            Thread.currentThread().interrupt();
+            failOnIteration.setTrue();
+        } catch (ExecutionException e) {
+            log.error("Currency data fetch task failed", e);
+            failOnIteration.setTrue();
+        } finally {
+            tasks.forEach(task -> task.cancel(true));
+        }
+        //cancelled tasks can still finish late, they must not leak into this iteration
+        return List.copyOf(entitiesList);
+    }
+
+    List<Currency> prepareEntitiesUsingCrossRates(long taskTimestamp, Map<String, String> currentCurrencies, MutableBoolean failOnIteration) {
+        ExchangeRate usdRates;
+        try {
+            //single fetch per cycle, every base is derived from the USD row
+            usdRates = openExchangeExternalAPIService.fetchLatestRates();
+        } catch (Exception ex) {
+            failOnIteration.setTrue();
+            log.error("Exception on getting latest rates from third-party. Currencies not be able to update", ex);
+            throw new RuntimeException(ex);
+        }
+        if (usdRates == null || usdRates.getRates() == null || usdRates.getRates().isEmpty()) {
             failOnIteration.setTrue();
+            log.error("Third-party returned no latest rates. Currencies not be able to update");
+            throw new RuntimeException("Latest rates are empty");
+        }
+
+        RateRow usdRow = RateRow.copyOf(exchangeRates.getIndex(), usdRates.getRates());
+        List<Currency> entitiesList = new ArrayList<>(currentCurrencies.size());
+        for (Map.Entry<String, String> entry : currentCurrencies.entrySet()) {
+            ExchangeRate rate = deriveCrossRate(usdRates.getTimestamp(), usdRow, entry.getKey());
+            if (rate == null) {
+                log.warn("Currency '{}' has no USD rate and will be skipped", entry.getKey());
+                metrics.currencyFailed("no_usd_rate");
+                continue;
+            }
+            entitiesList.add(prepareCurrencyEntity(entry.getKey(), rate, entry.getValue(), taskTimestamp));
         }
         return entitiesList;
     }
 
-    void cleanNotRelevantData(long taskTimestamp, MutableBoolean failOnIteration) {
+    ExchangeRate deriveCrossRate(long timestamp, RateRow usdRow, String currency) {
+        RateRow row = usdRow.rebase(currency);
+        return row == null ? null : new ExchangeRate(timestamp, currency, row);
+    }
+
+    ExchangeRate fetchRate(String currency) {
+        if (rateStrategy == RateFetchStrategy.PER_BASE) {
+            return openExchangeExternalAPIService.fetchExchangeRate(currency);
+        }
+        ExchangeRate usdRates = openExchangeExternalAPIService.fetchLatestRates();
+        if (usdRates == null || usdRates.getRates() == null) {
+            return null;
+        }
+        RateRow usdRow = RateRow.copyOf(exchangeRates.getIndex(), usdRates.getRates());
+        return deriveCrossRate(usdRates.getTimestamp(), usdRow, currency.toUpperCase(Locale.ROOT));
+    }
+
+    void cleanNotRelevantData(long taskTimestamp, Set<String> keptCurrencies, MutableBoolean failOnIteration) {
         try {
             transactionalInvoker.invokeTransactional(() -> {
-                int removed = currencyRepository.deleteByUpdatedAtBefore(taskTimestamp);
+                //rows with unchanged rates aren't rewritten, only their 'last_seen_at' is moved by the bulk update
+                int removed = keptCurrencies.isEmpty()
+                        ? currencyRepository.deleteByLastSeenAtBefore(taskTimestamp)
+                        : currencyRepository.deleteByLastSeenAtBeforeAndCurrencyNameNotIn(taskTimestamp, keptCurrencies);
+                metrics.rowsWritten("delete", removed);
                 log.info("Removed {} old values", removed);
             });
         } catch (Exception ex) {
@@ -179,7 +548,7 @@ public class OpenExchangeCurrencyService implements ICurrencyService {
         }
     }
 
-    Runnable prepareCurrencyDataFetchTask(long taskTimestamp, MutableBoolean failOnIteration, List<Currency> entitiesList, CountDownLatch countDownLatch, Map.Entry<String, String> entry) {
+    Runnable prepareCurrencyDataFetchTask(long taskTimestamp, MutableBoolean failOnIteration, List<Currency> entitiesList, Semaphore permits, Map.Entry<String, String> entry) {
         return () -> {
             log.debug("Currency data fetch task is started for value '{}'", entry.getKey());
             ExchangeRate rate;
@@ -191,9 +560,10 @@ public class OpenExchangeCurrencyService implements ICurrencyService {
                 log.error("Currency '{}' not be able to update. " +
                                 "The currency will be skipped and updated on the next iteration. Exception message is '{}'",
                         entry.getKey(), ex.getMessage());
+                metrics.currencyFailed("fetch");
                 failOnIteration.setTrue();
             } finally {
-                countDownLatch.countDown();
+                permits.release();
                 log.debug("Currency data fetch task is finished for value '{}'", entry.getKey());
             }
         };
@@ -212,12 +582,15 @@ public class OpenExchangeCurrencyService implements ICurrencyService {
     }
 
     void prepareAndSaveNewCurrency(String currency, ExchangeRate rate) {
-        String currencyFullName = openExchangeExternalAPIService.getCurrencies().get(currency);
+        //the catalogue is cached, adding a currency costs the rate fetch only
+        String currencyFullName = openExchangeExternalAPIService.getCurrencyName(currency);
 
         long currTime = System.currentTimeMillis();
         Currency currencyEntity = prepareCurrencyEntity(currency, rate, currencyFullName, currTime);
         currencyRepository.save(currencyEntity);
-        exchangeRates.put(currency, rate);
+        //cached with 'updated_at' like a reloaded row, not the third party's timestamp
+        exchangeRates.put(currency, new ExchangeRate(currencyEntity.getUpdatedAt(), currency, rate.getRates()));
+        changeNotifications.notifyChanged();
     }
 
     Currency prepareCurrencyEntity(String currency, ExchangeRate rate, String currencyFullName, long currTime) {
@@ -226,32 +599,107 @@ public class OpenExchangeCurrencyService implements ICurrencyService {
         currencyEntity.setCurrencyFullName(currencyFullName);
         currencyEntity.setCreatedAt(currTime);
         currencyEntity.setUpdatedAt(currTime);
+        currencyEntity.setLastSeenAt(currTime);
+        currencyEntity.setRates(RatesCodec.encode(rate.getRates()));
+        currencyEntity.setRatesHash(RatesCodec.fingerprint(currencyEntity.getRates()));
+        return currencyEntity;
+    }
+
+    synchronized void initCachedCurrenciesData() {
+        List<Currency> currencies = currencyRepository.findAll();
+        exchangeRates.replaceAll(currencies.stream().map(this::map).collect(Collectors.toMap(ExchangeRate::getBase, Function.identity())));
+        cacheWatermark = maxUpdatedAt(currencies, 0);
+        saveLocalSnapshot();
+    }
+
+    // Applies only rows changed since the last applied watermark, plus removals. Falls back to a full load once.
+    // Rows of the lookback window the cache already has are skipped, so they aren't published again
+    synchronized void reloadCachedCurrenciesData() {
+        if (cacheWatermark < 0) {
+            initCachedCurrenciesData();
+            return;
+        }
+        List<Currency> changed = currencyRepository.findByUpdatedAtGreaterThan(cacheWatermark - reloadLookback.toMillis());
+        ExchangeRatesSnapshot current = exchangeRates.snapshot();
+        Map<String, ExchangeRate> upserts = changed.stream()
+                .filter(currency -> !isCached(current, currency))
+                .map(this::map)
+                .collect(Collectors.toMap(ExchangeRate::getBase, Function.identity()));
+
+        //every stored row is in the cache after the merge, so equal sizes mean nothing was removed
+        Set<String> removals = new HashSet<>();
+        long stored = currencyRepository.count();
+        Set<String> cached = new HashSet<>(current.getCurrencies());
+        cached.addAll(upserts.keySet());
+        if (cached.size() != stored) {
+            removals.addAll(cached);
+            removals.removeAll(currencyRepository.findAllCurrencyNames());
+        }
+
+        exchangeRates.apply(upserts, removals);
+        cacheWatermark = maxUpdatedAt(changed, cacheWatermark);
+        log.debug("Cache is reloaded, {} changed and {} removed currencies", upserts.size(), removals.size());
+        if (!upserts.isEmpty() || !removals.isEmpty()) {
+            saveLocalSnapshot();
+        }
+    }
+
+    // Loads the local snapshot file into the cache together with its watermark, false when there is none to use
+    synchronized boolean restoreLocalSnapshot() {
+        if (snapshotPath.isEmpty() || !Files.exists(Path.of(snapshotPath))) {
+            return false;
+        }
         try {
-            currencyEntity.setRates(objectMapper.writeValueAsString(rate.getRates()));
+            SnapshotFile.Content content = SnapshotFile.read(Path.of(snapshotPath), exchangeRates.getIndex());
+            exchangeRates.replaceAll(content.rates());
+            cacheWatermark = content.watermark();
+            log.info("Cache is restored from the local snapshot '{}', {} currencies", snapshotPath, content.rates().size());
+            return true;
         } catch (Exception ex) {
-            log.error("Jackson parsing rates exception for currency '{}'", rate.getBase(), ex);
+            log.warn("Local snapshot '{}' can't be read and is ignored. Exception message '{}'", snapshotPath, ex.getMessage());
+            return false;
         }
-        return currencyEntity;
     }
 
-    void initCachedCurrenciesData() {
-        this.exchangeRates = currencyRepository.findAll().stream().map(this::map).collect(Collectors.toMap(ExchangeRate::getBase, Function.identity()));
+    // Called with the monitor held, so the file always matches 'cacheWatermark'. A failed write only costs the next warm start
+    private void saveLocalSnapshot() {
+        if (snapshotPath.isEmpty()) {
+            return;
+        }
+        try {
+            SnapshotFile.write(Path.of(snapshotPath), exchangeRates.snapshot(), cacheWatermark);
+        } catch (Exception ex) {
+            log.warn("Local snapshot '{}' can't be written. Exception message '{}'", snapshotPath, ex.getMessage());
+        }
     }
 
-    ExchangeRate map(Currency from) {
-        try {
-            return new ExchangeRate(
-                    from.getUpdatedAt(),
-                    from.getCurrencyName(),
-                    objectMapper.readValue(from.getRates(), currencyRateType));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+    private static boolean isCached(ExchangeRatesSnapshot snapshot, Currency currency) {
+        ExchangeRate cached = snapshot.get(currency.getCurrencyName());
+        return cached != null && cached.getTimestamp() == currency.getUpdatedAt();
+    }
+
+    private static long maxUpdatedAt(List<Currency> currencies, long initial) {
+        long max = initial;
+        for (Currency currency : currencies) {
+            max = Math.max(max, currency.getUpdatedAt());
         }
+        return max;
+    }
+
+    ExchangeRate map(Currency from) {
+        return new ExchangeRate(
+                from.getUpdatedAt(),
+                from.getCurrencyName(),
+                RatesCodec.decode(exchangeRates.getIndex(), from.getRates()));
     }
 
     private void updateDataInBulk(MutableBoolean failOnIteration, List<Currency> entitiesList) {
         try {
-            transactionalInvoker.invokeTransactional(() -> bulkDBUpdater.insertOrUpdateBulkData(entitiesList));
+            transactionalInvoker.invokeTransactional(() -> {
+                bulkDBUpdater.insertOrUpdateBulkData(entitiesList);
+                rateHistory.record(entitiesList);
+            });
+            metrics.rowsWritten("upsert", entitiesList.size());
             log.info("Updated {} currencies", entitiesList.size());
         } catch (Exception ex) {
             log.error("Exception on currencies bulk update. Data won't be updated. Exception message '{}'", ex.getMessage(), ex);
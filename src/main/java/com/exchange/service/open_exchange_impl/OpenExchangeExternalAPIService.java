@@ -2,57 +2,129 @@ package com.exchange.service.open_exchange_impl;
 
 import com.exchange.dtos.ExchangeRate;
 import com.exchange.service.ConfigurationService;
+import com.exchange.service.CurrencyMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.Map;
 
 @Service
+@Slf4j
 public class OpenExchangeExternalAPIService {
 
     private static final String LATEST_ENDPOINT = "/api/latest.json";
     private static final String CURRENCIES_ENDPOINT = "/api/currencies.json";
+    static final String USD_BASE = "USD";
 
-    private final RestTemplate restTemplate;
+    private final IOpenExchangeClient openExchangeClient;
     private final ConfigurationService configurationService;
+    private final CurrencyMetrics metrics;
+    private final ParameterizedTypeReference<ExchangeRate> exchangeRateResponseType = new ParameterizedTypeReference<>() {
+    };
     private final ParameterizedTypeReference<Map<String, String>> currencyMapResponseType = new ParameterizedTypeReference<>() {
     };
+    //currency catalogue of the provider, null until the first fetch
+    private volatile Catalogue catalogue;
+
+    //age after which the catalogue is revalidated with the provider
+    @Value("${openExchange.catalogue.ttl:PT6H}")
+    Duration catalogueTtl = Duration.ofHours(6);
 
-    public OpenExchangeExternalAPIService(RestTemplate restTemplate,
-                                          ConfigurationService configurationService) {
-        this.restTemplate = restTemplate;
+    public OpenExchangeExternalAPIService(IOpenExchangeClient openExchangeClient,
+                                          ConfigurationService configurationService,
+                                          CurrencyMetrics metrics) {
+        this.openExchangeClient = openExchangeClient;
         this.configurationService = configurationService;
+        this.metrics = metrics;
     }
 
+    // Rates with the requested base, needs a plan that allows changing the base (see RateFetchStrategy.PER_BASE)
     public ExchangeRate fetchExchangeRate(String currency) {
+        return metrics.recordExternalCall("latest_base", () -> fetchLatest(currency));
+    }
+
+    // Rates with the USD base, available on the free plan. One call covers every currency
+    public ExchangeRate fetchLatestRates() {
+        return metrics.recordExternalCall("latest_usd", () -> fetchLatest(USD_BASE));
+    }
+
+    private ExchangeRate fetchLatest(String base) {
         String url = configurationService.getOpenExchangeBaseUrl() + LATEST_ENDPOINT;
-        UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url)
+        URI uri = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("app_id", configurationService.getOpenExchangeAppId())
+                .queryParam("base", base)
+                .encode()
+                .build()
+                .toUri();
+        return openExchangeClient.get(uri, exchangeRateResponseType);
+    }
 
-                //We are using a free plan of openExchange api,
-                // so we can't change the base param here, because we will receive a subscription error(upgrade your plan).
-                //Eventually for each request we will use 'base' param with 'USD' val(that's free),
-                // that means every currency will be rated as USD.
+    // Currency catalogue, code to full name. Served from memory for 'catalogueTtl', then revalidated with a
+    // conditional GET, so an unchanged catalogue costs a 304 without a body
+    public Map<String, String> getCurrencies() {
+        Catalogue current = catalogue;
+        if (current != null && !current.isExpired(catalogueTtl)) {
+            return current.names();
+        }
+        return revalidateCatalogue().names();
+    }
 
-                .queryParam("base", "USD"/* !HARDCODE! Here should be the param 'currency' instead of "USD"*/);
-        return restTemplate.getForObject(ucb.toUriString(), ExchangeRate.class);
+    // Full name of 'currency' from the catalogue, null when the provider doesn't list it
+    public String getCurrencyName(String currency) {
+        return getCurrencies().get(currency);
     }
 
-    public Map<String, String> getCurrencies() {
+    // One revalidation at a time, callers that waited for it get its result. A held catalogue is served when the
+    // provider fails, it rarely changes
+    private synchronized Catalogue revalidateCatalogue() {
+        Catalogue current = catalogue;
+        if (current != null && !current.isExpired(catalogueTtl)) {
+            return current;
+        }
         String url = configurationService.getOpenExchangeBaseUrl() + CURRENCIES_ENDPOINT;
-        UriComponentsBuilder ucb = UriComponentsBuilder.fromHttpUrl(url)
-                .queryParam("app_id", configurationService.getOpenExchangeAppId());
+        URI uri = UriComponentsBuilder.fromHttpUrl(url)
+                .queryParam("app_id", configurationService.getOpenExchangeAppId())
+                .encode()
+                .build()
+                .toUri();
+        String etag = current == null ? null : current.etag();
+        String lastModified = current == null ? null : current.lastModified();
+        IOpenExchangeClient.ConditionalResponse<Map<String, String>> response;
+        try {
+            response = metrics.recordExternalCall("currencies", () ->
+                    openExchangeClient.getConditional(uri, currencyMapResponseType, etag, lastModified));
+        } catch (RuntimeException ex) {
+            if (current == null) {
+                throw ex;
+            }
+            log.warn("Currency catalogue can't be revalidated, the held one is served. Exception message '{}'", ex.getMessage());
+            return current;
+        }
+        Catalogue revalidated;
+        if (response.notModified() && current != null) {
+            log.debug("Currency catalogue is not modified");
+            revalidated = new Catalogue(current.names(), current.etag(), current.lastModified(), System.currentTimeMillis());
+        } else {
+            if (response.body() == null) {
+                throw new IllegalStateException("Currency catalogue is empty");
+            }
+            revalidated = new Catalogue(Map.copyOf(response.body()), response.etag(), response.lastModified(), System.currentTimeMillis());
+            log.info("Currency catalogue is loaded, {} currencies", revalidated.names().size());
+        }
+        catalogue = revalidated;
+        return revalidated;
+    }
 
-        ResponseEntity<Map<String, String>> responseEntity = restTemplate.exchange(
-                ucb.toUriString(),
-                HttpMethod.GET,
-                null,
-                currencyMapResponseType);
+    // Names with the validators they were served with, 'fetchedAt' is the last time the provider confirmed them
+    record Catalogue(Map<String, String> names, String etag, String lastModified, long fetchedAt) {
 
-        return responseEntity.getBody();
+        boolean isExpired(Duration ttl) {
+            return System.currentTimeMillis() - fetchedAt >= ttl.toMillis();
+        }
     }
 }
@@ -0,0 +1,8 @@
+package com.exchange.service.open_exchange_impl;
+
+public enum RateFetchStrategy {
+    //one 'latest.json' call per cycle with the USD base, every other base is derived through USD
+    TRIANGULATED,
+    //one call per currency with 'base' set to it, needs a plan that allows changing the base
+    PER_BASE
+}
@@ -0,0 +1,46 @@
+package com.exchange.service.open_exchange_impl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+
+@Component
+@ConditionalOnProperty(name = "openExchange.client", havingValue = "rest-template", matchIfMissing = true)
+public class RestTemplateOpenExchangeClient implements IOpenExchangeClient {
+
+    private final RestTemplate restTemplate;
+
+    public RestTemplateOpenExchangeClient(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public <T> T get(URI uri, ParameterizedTypeReference<T> responseType) {
+        return restTemplate.exchange(uri, HttpMethod.GET, null, responseType).getBody();
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(URI uri, ParameterizedTypeReference<T> responseType, String etag, String lastModified) {
+        HttpHeaders headers = new HttpHeaders();
+        if (etag != null) {
+            headers.set(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        //a 304 isn't an error for the default error handler, it comes back with an empty body
+        ResponseEntity<T> response = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers), responseType);
+        return new ConditionalResponse<>(response.getBody(),
+                response.getHeaders().getFirst(HttpHeaders.ETAG),
+                response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED),
+                response.getStatusCode() == HttpStatus.NOT_MODIFIED);
+    }
+}
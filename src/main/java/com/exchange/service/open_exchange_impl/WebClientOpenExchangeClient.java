@@ -0,0 +1,61 @@
+package com.exchange.service.open_exchange_impl;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.URI;
+import java.time.Duration;
+
+@Component
+@ConditionalOnProperty(name = "openExchange.client", havingValue = "webclient")
+public class WebClientOpenExchangeClient implements IOpenExchangeClient {
+
+    private final WebClient webClient;
+    private final Duration callTimeout;
+
+    public WebClientOpenExchangeClient(@Qualifier("openExchangeWebClient") WebClient webClient,
+                                       @Value("${openExchange.http.callTimeout:PT15S}") Duration callTimeout) {
+        this.webClient = webClient;
+        this.callTimeout = callTimeout;
+    }
+
+    // The body is buffered whole, up to 'openExchange.http.maxInMemorySize', then decoded by Jackson at once.
+    // The whole call is bounded by 'callTimeout'
+    @Override
+    public <T> T get(URI uri, ParameterizedTypeReference<T> responseType) {
+        return webClient.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToMono(responseType)
+                .timeout(callTimeout)
+                .block();
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(URI uri, ParameterizedTypeReference<T> responseType, String etag, String lastModified) {
+        return webClient.get()
+                .uri(uri)
+                .headers(headers -> {
+                    if (etag != null) {
+                        headers.set(HttpHeaders.IF_NONE_MATCH, etag);
+                    }
+                    if (lastModified != null) {
+                        headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+                    }
+                })
+                .retrieve()
+                .toEntity(responseType)
+                .map(response -> new ConditionalResponse<>(response.getBody(),
+                        response.getHeaders().getFirst(HttpHeaders.ETAG),
+                        response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED),
+                        response.getStatusCode() == HttpStatus.NOT_MODIFIED))
+                .timeout(callTimeout)
+                .block();
+    }
+}
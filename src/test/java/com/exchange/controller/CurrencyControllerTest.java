@@ -1,66 +1,329 @@
 package com.exchange.controller;
 
+import com.exchange.dtos.ConversionRequest;
+import com.exchange.dtos.ConversionResult;
 import com.exchange.dtos.ExchangeRate;
+import com.exchange.dtos.RatePoint;
+import com.exchange.service.RateHistoryService;
+import com.exchange.service.RateUpdatesPublisher;
+import com.exchange.service.RenderedExchangeRates;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.cache.ExchangeRatesStore;
 import com.exchange.service.open_exchange_impl.OpenExchangeCurrencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.Consumer;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class CurrencyControllerTest {
 
+    private static final long UPDATED_AT = Instant.parse("2024-03-01T10:00:00Z").toEpochMilli();
+
     @Mock
     private OpenExchangeCurrencyService currencyService;
 
+    @Mock
+    private RenderedExchangeRates renderedRates;
+
+    @Mock
+    private RateUpdatesPublisher rateUpdates;
+
+    @Mock
+    private RateHistoryService rateHistory;
+
     private CurrencyController controller;
 
     @BeforeEach
     public void setUp() {
-        controller = new CurrencyController(currencyService);
+        controller = new CurrencyController(currencyService, renderedRates, rateUpdates, rateHistory, new ObjectMapper());
     }
 
     @Test
     void testGetCurrencies() {
         // Arrange
-        Set<String> currencies = Set.of("USD", "GBP", "EUR");
-        when(currencyService.getCurrencies()).thenReturn(currencies);
+        ExchangeRatesSnapshot snapshot = snapshot("USD", "GBP", "EUR");
+        when(currencyService.getSnapshot()).thenReturn(snapshot);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ofMinutes(10));
 
         // Act
-        ResponseEntity<Collection<String>> response = controller.getCurrencies();
+        ResponseEntity<Collection<String>> response = controller.getCurrencies(request());
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(currencies, response.getBody());
-        verify(currencyService).getCurrencies();
+        assertEquals(List.of("EUR", "GBP", "USD"), List.copyOf(response.getBody()));
+        assertEquals("\"" + CurrencyController.tagOf("EUR,GBP,USD") + "\"", response.getHeaders().getETag());
+        assertEquals(UPDATED_AT, response.getHeaders().getLastModified());
+        assertEquals("max-age=600", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    void testGetCurrencies_whenRatesWereUpdatedAtDifferentTimes() {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        store.put("USD", new ExchangeRate(UPDATED_AT, "USD", Map.of("USD", 1.0)));
+        store.put("GBP", new ExchangeRate(UPDATED_AT + 60_000, "GBP", Map.of("GBP", 1.0)));
+        when(currencyService.getSnapshot()).thenReturn(store.snapshot());
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ofMinutes(10));
+
+        // Act
+        ResponseEntity<Collection<String>> response = controller.getCurrencies(request());
+
+        // Assert
+        assertEquals(UPDATED_AT + 60_000, response.getHeaders().getLastModified());
+    }
+
+    @Test
+    void testGetCurrencies_whenTagMatchesOnAnotherNode() {
+        // Arrange
+        //another node published the same codes in another order, with its own version and time
+        when(currencyService.getSnapshot()).thenReturn(snapshot("USD", "GBP", "EUR"), snapshot("EUR", "USD", "GBP"));
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ofMinutes(10));
+        String tag = controller.getCurrencies(request()).getHeaders().getETag();
+
+        // Act
+        ResponseEntity<Collection<String>> response = controller.getCurrencies(request(HttpHeaders.IF_NONE_MATCH, tag));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals("max-age=600", response.getHeaders().getCacheControl());
     }
 
     @Test
     void testGetExchangeRates_whenCurrencyExists() {
         // Arrange
-        ExchangeRate exchangeRate = new ExchangeRate();
-        exchangeRate.setBase("USD");
-        exchangeRate.setRates(Map.of("GBP", 1.23));
+        ExchangeRate exchangeRate = snapshot("USD").get("USD");
+        when(currencyService.getExchangeRates("usd")).thenReturn(exchangeRate);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ZERO);
+        byte[] json = "{}".getBytes();
+        RenderedExchangeRates.Body body = new RenderedExchangeRates.Body(exchangeRate, json, new byte[0]);
+        when(renderedRates.get("USD", exchangeRate)).thenReturn(body);
+
+        // Act
+        ResponseEntity<byte[]> response = controller.getExchangeRates("usd", null, request());
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(json, response.getBody());
+        assertEquals("\"" + body.tag() + "\"", response.getHeaders().getETag());
+        assertTrue(body.tag().startsWith(UPDATED_AT + "-"));
+        assertEquals(UPDATED_AT, response.getHeaders().getLastModified());
+        assertEquals("max-age=0", response.getHeaders().getCacheControl());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void testGetExchangeRates_whenNotModified() {
+        // Arrange
+        ExchangeRate exchangeRate = snapshot("USD").get("USD");
+        when(currencyService.getExchangeRates("USD")).thenReturn(exchangeRate);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ofMinutes(5));
+        RenderedExchangeRates.Body body = new RenderedExchangeRates.Body(exchangeRate, "{}".getBytes(), new byte[0]);
+        when(renderedRates.get("USD", exchangeRate)).thenReturn(body);
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        ResponseEntity<byte[]> response = controller.getExchangeRates("USD", null,
+                new ServletWebRequest(request(HttpHeaders.IF_NONE_MATCH, "\"" + body.tag() + "\"").getRequest(), servletResponse));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals("\"" + body.tag() + "\"", servletResponse.getHeader(HttpHeaders.ETAG));
+        assertEquals("max-age=300", response.getHeaders().getCacheControl());
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+    }
+
+    @Test
+    void testGetExchangeRates_whenNotModifiedSince() {
+        // Arrange
+        ExchangeRate exchangeRate = snapshot("USD").get("USD");
+        when(currencyService.getExchangeRates("USD")).thenReturn(exchangeRate);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ofMinutes(5));
+        RenderedExchangeRates.Body body = new RenderedExchangeRates.Body(exchangeRate, "{}".getBytes(), new byte[0]);
+        when(renderedRates.get("USD", exchangeRate)).thenReturn(body);
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/");
+        servletRequest.addHeader(HttpHeaders.IF_MODIFIED_SINCE, UPDATED_AT);
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        ResponseEntity<byte[]> response = controller.getExchangeRates("USD", null,
+                new ServletWebRequest(servletRequest, servletResponse));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(UPDATED_AT, servletResponse.getDateHeader(HttpHeaders.LAST_MODIFIED));
+    }
+
+    @Test
+    void testGetExchangeRates_whenGzipIsAccepted() {
+        // Arrange
+        ExchangeRate exchangeRate = snapshot("USD").get("USD");
+        when(currencyService.getExchangeRates("USD")).thenReturn(exchangeRate);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ZERO);
+        byte[] gzip = new byte[]{31, -117};
+        RenderedExchangeRates.Body body = new RenderedExchangeRates.Body(exchangeRate, "{}".getBytes(), gzip);
+        when(renderedRates.get("USD", exchangeRate)).thenReturn(body);
+
+        // Act
+        ResponseEntity<byte[]> response = controller.getExchangeRates("USD", "deflate, gzip;q=0.8", request());
+
+        // Assert
+        assertSame(gzip, response.getBody());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"" + body.tag() + "-gzip\"", response.getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+    }
+
+    @Test
+    void testGetExchangeRates_whenNotModifiedWithGzip() {
+        // Arrange
+        ExchangeRate exchangeRate = snapshot("USD").get("USD");
         when(currencyService.getExchangeRates("USD")).thenReturn(exchangeRate);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ZERO);
+        RenderedExchangeRates.Body body = new RenderedExchangeRates.Body(exchangeRate, "{}".getBytes(), new byte[]{31, -117});
+        when(renderedRates.get("USD", exchangeRate)).thenReturn(body);
+
+        // Act
+        //the tag of the identity representation doesn't match the gzip one
+        ResponseEntity<byte[]> identity = controller.getExchangeRates("USD", "gzip",
+                request(HttpHeaders.IF_NONE_MATCH, "\"" + body.tag() + "\""));
+        ResponseEntity<byte[]> gzip = controller.getExchangeRates("USD", "gzip",
+                request(HttpHeaders.IF_NONE_MATCH, "\"" + body.tag() + "-gzip\""));
+
+        // Assert
+        assertEquals(HttpStatus.OK, identity.getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, gzip.getStatusCode());
+        assertNull(gzip.getBody());
+    }
+
+    @Test
+    void testGetExchangeRates_whenBasesAreGiven() {
+        // Arrange
+        ExchangeRatesSnapshot snapshot = snapshot("USD", "GBP");
+        when(currencyService.getSnapshot()).thenReturn(snapshot);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ZERO);
+        when(renderedRates.get(anyString(), any())).thenAnswer(invocation -> body(invocation.getArgument(0)));
 
         // Act
-        ResponseEntity<ExchangeRate> response = controller.getExchangeRates("USD");
+        ResponseEntity<byte[]> response = controller.getExchangeRates(List.of("gbp", "XXX", "USD", "GBP"));
 
         // Assert
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(exchangeRate, response.getBody());
-        verify(currencyService).getExchangeRates("USD");
+        assertEquals("[{\"base\":\"GBP\"},{\"base\":\"USD\"}]", new String(response.getBody()));
+        verify(currencyService, never()).getExchangeRates(anyString());
+    }
+
+    @Test
+    void testGetAllExchangeRates() throws Exception {
+        // Arrange
+        ExchangeRatesSnapshot snapshot = snapshot("USD", "GBP");
+        when(currencyService.getSnapshot()).thenReturn(snapshot);
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ZERO);
+        when(renderedRates.get(anyString(), any())).thenAnswer(invocation -> body(invocation.getArgument(0)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = controller.getAllExchangeRates(
+                new ServletWebRequest(new MockHttpServletRequest("GET", "/"), servletResponse));
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals("{\"base\":\"GBP\"}\n{\"base\":\"USD\"}\n", out.toString());
+        assertEquals(UPDATED_AT, servletResponse.getDateHeader(HttpHeaders.LAST_MODIFIED));
+    }
+
+    @Test
+    void testGetAllExchangeRates_whenNotModified() {
+        // Arrange
+        when(currencyService.getSnapshot()).thenReturn(snapshot("USD", "GBP"));
+        when(currencyService.timeToNextRefresh()).thenReturn(Duration.ZERO);
+        when(renderedRates.get(anyString(), any())).thenAnswer(invocation -> body(invocation.getArgument(0)));
+        String tag = "\"" + CurrencyController.tagOf("GBP:GBP,USD:USD,") + "\"";
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = controller.getAllExchangeRates(request(HttpHeaders.IF_NONE_MATCH, tag));
+
+        // Assert
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void testGetHistory() throws Exception {
+        // Arrange
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = Instant.parse("2024-01-02T00:00:00Z");
+        when(rateHistory.isValidRange(from, to, Duration.ofHours(6))).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<RatePoint> consumer = invocation.getArgument(5);
+            consumer.accept(new RatePoint(1L, 1.5, 1.0, 2.0, 1.8, 6));
+            consumer.accept(new RatePoint(2L, 1.6, 1.6, 1.6, 1.6, 1));
+            return null;
+        }).when(rateHistory).series(eq("GBP"), eq("EUR"), eq(from), eq(to), eq(Duration.ofHours(6)), any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = controller.getHistory("gbp", from, to, Duration.ofHours(6), "eur");
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"timestamp\":1,\"average\":1.5,\"min\":1.0,\"max\":2.0,\"last\":1.8,\"samples\":6}", lines[0]);
+    }
+
+    @Test
+    void testGetHistory_whenRangeIsInvalid() {
+        // Arrange
+        when(rateHistory.isValidRange(any(), any(), any())).thenReturn(false);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = controller.getHistory("GBP", null, null, Duration.ZERO, "USD");
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(rateHistory, never()).series(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testAcceptsGzip() {
+        // Act & Assert
+        assertTrue(CurrencyController.acceptsGzip("gzip"));
+        assertTrue(CurrencyController.acceptsGzip("br, GZIP ;q=0.5"));
+        assertFalse(CurrencyController.acceptsGzip("gzip;q=0"));
+        assertFalse(CurrencyController.acceptsGzip("deflate"));
+        assertFalse(CurrencyController.acceptsGzip(null));
     }
 
     @Test
@@ -69,11 +332,12 @@ class CurrencyControllerTest {
         when(currencyService.getExchangeRates("USD")).thenReturn(null);
 
         // Act
-        ResponseEntity<ExchangeRate> response = controller.getExchangeRates("USD");
+        ResponseEntity<byte[]> response = controller.getExchangeRates("USD", null, request());
 
         // Assert
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertNull(response.getBody());
+        assertFalse(response.getHeaders().containsKey(HttpHeaders.ETAG));
         verify(currencyService).getExchangeRates("USD");
     }
 
@@ -90,4 +354,66 @@ class CurrencyControllerTest {
         assertEquals("Currency added successfully", response.getBody());
         verify(currencyService).addCurrency("USD");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testConvert_whenRateExists() {
+        // Arrange
+        ConversionResult result = new ConversionResult(1L, "USD", "GBP", 10, 0.8, 8.0);
+        when(currencyService.convert("USD", "GBP", 10)).thenReturn(result);
+
+        // Act
+        ResponseEntity<ConversionResult> response = controller.convert("USD", "GBP", 10);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(result, response.getBody());
+    }
+
+    @Test
+    void testConvert_whenRateDoesNotExist() {
+        // Arrange
+        when(currencyService.convert("USD", "XXX", 10)).thenReturn(null);
+
+        // Act
+        ResponseEntity<ConversionResult> response = controller.convert("USD", "XXX", 10);
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void testConvertBatch() {
+        // Arrange
+        List<ConversionRequest> requests = List.of(new ConversionRequest("USD", "GBP", 10));
+        List<ConversionResult> results = List.of(new ConversionResult(1L, "USD", "GBP", 10, 0.8, 8.0));
+        when(currencyService.convert(requests)).thenReturn(results);
+
+        // Act
+        ResponseEntity<List<ConversionResult>> response = controller.convert(requests);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(results, response.getBody());
+    }
+
+    private static RenderedExchangeRates.Body body(String currency) {
+        return new RenderedExchangeRates.Body(null, ("{\"base\":\"" + currency + "\"}").getBytes(), new byte[0], currency);
+    }
+
+    private static ServletWebRequest request(String... headers) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        for (int i = 0; i < headers.length; i += 2) {
+            request.addHeader(headers[i], headers[i + 1]);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    private static ExchangeRatesSnapshot snapshot(String... currencies) {
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        for (String currency : currencies) {
+            store.put(currency, new ExchangeRate(UPDATED_AT, currency, Map.of(currency, 1.0)));
+        }
+        return store.snapshot();
+    }
+}
@@ -0,0 +1,56 @@
+package com.exchange.repository;
+
+import com.exchange.repository.entities.Currency;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkDBUpdaterTest {
+
+    @Test
+    void testWriteBinaryCopy() throws Exception {
+        // Arrange
+        Currency currency = new Currency();
+        currency.setCurrencyName("GBP");
+        currency.setRates(new byte[]{1, 2, 3});
+        currency.setRatesHash(5L);
+        currency.setCreatedAt(10L);
+        currency.setUpdatedAt(20L);
+        currency.setLastSeenAt(30L);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // Act
+        BulkDBUpdater.writeBinaryCopy(new DataOutputStream(bytes), List.of(currency));
+
+        // Assert
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        byte[] signature = new byte[11];
+        buffer.get(signature);
+        assertEquals("PGCOPY\n", new String(signature, 0, 7, StandardCharsets.US_ASCII));
+        assertEquals(0, buffer.getInt());
+        assertEquals(0, buffer.getInt());
+        assertEquals(7, buffer.getShort());
+        assertEquals(3, buffer.getInt());
+        byte[] name = new byte[3];
+        buffer.get(name);
+        assertEquals("GBP", new String(name, StandardCharsets.UTF_8));
+        //null full name
+        assertEquals(-1, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        byte[] rates = new byte[3];
+        buffer.get(rates);
+        assertArrayEquals(new byte[]{1, 2, 3}, rates);
+        for (long value : new long[]{5L, 10L, 20L, 30L}) {
+            assertEquals(8, buffer.getInt());
+            assertEquals(value, buffer.getLong());
+        }
+        assertEquals(-1, buffer.getShort());
+        assertFalse(buffer.hasRemaining());
+    }
+}
@@ -0,0 +1,178 @@
+package com.exchange.repository;
+
+import com.exchange.dtos.RatePoint;
+import com.exchange.repository.entities.Currency;
+import com.exchange.service.RateHistoryService;
+import com.exchange.service.cache.RatesCodec;
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// RateHistoryRepository against a Testcontainers PostgreSQL migrated by the project's changelog:
+// day partitions, 'date_bin' buckets and the self-join of both series on 'observed_at'
+@Testcontainers
+class RateHistoryRepositoryIntegrationTests {
+
+    private static final String SCHEMA = "exchange_test";
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:latest"));
+
+    private static HikariDataSource dataSource;
+
+    private RateHistoryRepository repository;
+
+    private RateHistoryService service;
+
+    private LocalDate today;
+
+    @BeforeAll
+    static void migrate() throws Exception {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl());
+        dataSource.setUsername(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+        new JdbcTemplate(dataSource).execute("CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.setChangeLog("classpath:db/changelog/changelog-master.xml");
+        liquibase.setContexts("test");
+        liquibase.setDefaultSchema(SCHEMA);
+        liquibase.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void close() {
+        dataSource.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        repository = new RateHistoryRepository(dataSource);
+        repository.defaultSchema = SCHEMA;
+        service = new RateHistoryService(repository);
+        repository.findPartitionDays().forEach(repository::dropPartition);
+        today = LocalDate.now(ZoneOffset.UTC);
+    }
+
+    @Test
+    void testMaintainPartitions() {
+        // Arrange
+        LocalDate expired = today.minusDays(100);
+        repository.createPartition(expired);
+
+        // Act
+        service.maintainPartitions();
+
+        // Assert
+        assertEquals(List.of(today, today.plusDays(1), today.plusDays(2)), repository.findPartitionDays());
+    }
+
+    @Test
+    void testFindSeries_acrossDayBoundary() {
+        // Arrange
+        //two refreshes half an hour before and after midnight land in the partitions of both days
+        Instant beforeMidnight = at(today.minusDays(1), "23:30");
+        Instant afterMidnight = at(today, "00:30");
+        repository.append(List.of(currency("GBP", 2.0, beforeMidnight), currency("EUR", 1.0, beforeMidnight)));
+        repository.append(List.of(currency("GBP", 4.0, afterMidnight), currency("EUR", 1.0, afterMidnight)));
+        service.maintainPartitions();
+        Instant from = at(today.minusDays(1), "23:00");
+        Instant to = at(today, "01:00");
+
+        // Act
+        List<RatePoint> hourly = repository.findSeries("GBP", "EUR", from, from, to, Duration.ofHours(1));
+        List<RatePoint> twoHourly = repository.findSeries("GBP", "EUR", from, from, to, Duration.ofHours(2));
+
+        // Assert
+        assertTrue(repository.findPartitionDays().containsAll(List.of(today.minusDays(1), today)));
+        assertEquals(2, hourly.size());
+        assertPoint(hourly.get(0), from, 2.0, 2.0, 2.0, 2.0, 1);
+        assertPoint(hourly.get(1), at(today, "00:00"), 4.0, 4.0, 4.0, 4.0, 1);
+        assertEquals(1, twoHourly.size());
+        assertPoint(twoHourly.get(0), from, 3.0, 2.0, 4.0, 4.0, 2);
+    }
+
+    @Test
+    void testSeries_readsWindowsAcrossDayBoundary() {
+        // Arrange
+        Instant beforeMidnight = at(today.minusDays(1), "23:30");
+        Instant afterMidnight = at(today, "00:30");
+        repository.append(List.of(currency("GBP", 2.0, beforeMidnight), currency("EUR", 1.0, beforeMidnight)));
+        repository.append(List.of(currency("GBP", 4.0, afterMidnight), currency("EUR", 1.0, afterMidnight)));
+        ReflectionTestUtils.setField(service, "pageSize", 1);
+        List<RatePoint> points = new ArrayList<>();
+
+        // Act
+        service.series("GBP", "EUR", at(today.minusDays(1), "22:00"), at(today, "02:00"), Duration.ofHours(1), points::add);
+
+        // Assert
+        assertEquals(2, points.size());
+        assertPoint(points.get(0), at(today.minusDays(1), "23:00"), 2.0, 2.0, 2.0, 2.0, 1);
+        assertPoint(points.get(1), at(today, "00:00"), 4.0, 4.0, 4.0, 4.0, 1);
+    }
+
+    @Test
+    void testFindSeries_whenCurrencyIsRetried() {
+        // Arrange
+        //EUR failed in the cycle and was retried later, it is recorded at the cycle's timestamp
+        Instant cycle = at(today, "00:30");
+        repository.append(List.of(currency("GBP", 2.0, cycle)));
+        repository.append(List.of(currency("EUR", 1.0, cycle)));
+        //a second retry of the same cycle is ignored
+        repository.append(List.of(currency("EUR", 0.5, cycle)));
+        Instant from = at(today, "00:00");
+
+        // Act
+        List<RatePoint> series = repository.findSeries("GBP", "EUR", from, from, at(today, "01:00"), Duration.ofHours(1));
+
+        // Assert
+        assertEquals(1, series.size());
+        assertPoint(series.get(0), from, 2.0, 2.0, 2.0, 2.0, 1);
+    }
+
+    private static void assertPoint(RatePoint point, Instant bucket, double average, double min, double max, double last, int samples) {
+        assertEquals(bucket.toEpochMilli(), point.getTimestamp());
+        assertEquals(average, point.getAverage(), 1e-9);
+        assertEquals(min, point.getMin(), 1e-9);
+        assertEquals(max, point.getMax(), 1e-9);
+        assertEquals(last, point.getLast(), 1e-9);
+        assertEquals(samples, point.getSamples());
+    }
+
+    private static Instant at(LocalDate day, String time) {
+        return Instant.parse(day + "T" + time + ":00Z");
+    }
+
+    // 'usdPerUnit' USD for 1 unit of the currency, as the third party returns it
+    private static Currency currency(String code, double usdPerUnit, Instant seenAt) {
+        Currency currency = new Currency();
+        currency.setCurrencyName(code);
+        currency.setRates(RatesCodec.encode(Map.of("USD", usdPerUnit)));
+        currency.setLastSeenAt(seenAt.toEpochMilli());
+        currency.setUpdatedAt(seenAt.toEpochMilli());
+        return currency;
+    }
+}
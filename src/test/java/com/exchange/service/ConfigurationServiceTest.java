@@ -0,0 +1,137 @@
+package com.exchange.service;
+
+import com.exchange.repository.ConfigurationRepository;
+import com.exchange.repository.entities.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConfigurationServiceTest {
+
+    @Mock
+    private ConfigurationRepository configurationRepository;
+
+    private ConfigurationService service;
+
+    @BeforeEach
+    public void setUp() {
+        service = new ConfigurationService(configurationRepository);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testGetters_loadTableOnce() {
+        // Arrange
+        when(configurationRepository.findAll()).thenReturn(List.of(
+                configuration("fetch.openExchange.baseUrl", "https://openexchangerates.org"),
+                configuration("fetch.openExchange.appId", "app")));
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            service.getOpenExchangeBaseUrl();
+            service.getOpenExchangeAppId();
+        }
+
+        // Assert
+        assertEquals("https://openexchangerates.org", service.getOpenExchangeBaseUrl());
+        assertEquals("app", service.getOpenExchangeAppId());
+        assertEquals(0L, service.getFetchLastTimestamp());
+        assertFalse(service.getOpenExchangeFailOnLastIteration());
+        verify(configurationRepository, times(1)).findAll();
+        verify(configurationRepository, never()).findById(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSetters_areVisibleAtOnceAndFlushedInOneBatch() {
+        // Arrange
+        when(configurationRepository.findAll()).thenReturn(List.of());
+
+        // Act
+        service.setFetchLastTimestamp(42L);
+        service.setOpenExchangeFailOnLastIteration(true);
+        service.setFetchLastTimestamp(43L);
+
+        // Assert
+        assertEquals(43L, service.getFetchLastTimestamp());
+        assertTrue(service.getOpenExchangeFailOnLastIteration());
+        verify(configurationRepository, never()).save(any());
+
+        service.flush();
+        ArgumentCaptor<List<Configuration>> batch = ArgumentCaptor.forClass(List.class);
+        verify(configurationRepository, times(1)).saveAll(batch.capture());
+        assertEquals(2, batch.getValue().size());
+        assertTrue(batch.getValue().contains(configuration("fetch.lastTimestamp", "43")));
+    }
+
+    @Test
+    void testFlush_retriesFailedBatch() {
+        // Arrange
+        when(configurationRepository.findAll()).thenReturn(List.of());
+        when(configurationRepository.saveAll(anyList())).thenThrow(new RuntimeException()).thenReturn(List.of());
+        service.setFetchLastTimestamp(42L);
+
+        // Act
+        service.flush();
+        service.flush();
+
+        // Assert
+        verify(configurationRepository, times(2)).saveAll(anyList());
+        assertEquals(42L, service.getFetchLastTimestamp());
+    }
+
+    @Test
+    void testSetters_whenValueIsTooLong() {
+        // Arrange
+        Set<String> currencies = new TreeSet<>();
+        for (int i = 0; i < 300; i++) {
+            currencies.add(String.format("C%02d", i));
+        }
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> service.setOpenExchangeRetryCurrencies(currencies));
+        assertTrue(service.flush());
+        verify(configurationRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testReload_keepsUnflushedWrites() {
+        // Arrange
+        when(configurationRepository.findAll())
+                .thenReturn(List.of(configuration("fetch.lastTimestamp", "1")))
+                .thenReturn(List.of(configuration("fetch.lastTimestamp", "1"), configuration("fetch.openExchange.appId", "other")));
+        assertEquals(1L, service.getFetchLastTimestamp());
+        service.setFetchLastTimestamp(2L);
+
+        // Act
+        service.reload();
+
+        // Assert
+        assertEquals(2L, service.getFetchLastTimestamp());
+        assertEquals("other", service.getOpenExchangeAppId());
+    }
+
+    private static Configuration configuration(String key, String value) {
+        Configuration configuration = new Configuration();
+        configuration.setKey(key);
+        configuration.setValue(value);
+        return configuration;
+    }
+}
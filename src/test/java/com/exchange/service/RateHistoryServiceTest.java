@@ -0,0 +1,74 @@
+package com.exchange.service;
+
+import com.exchange.configuration.SchedulingConfig;
+import com.exchange.dtos.RatePoint;
+import com.exchange.repository.RateHistoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.scheduling.config.CronTask;
+import org.springframework.scheduling.config.ScheduledTask;
+import org.springframework.scheduling.config.ScheduledTaskHolder;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RateHistoryServiceTest {
+
+    @Test
+    void testMaintainPartitions_isScheduled() {
+        // Arrange
+        //Duration values of @Value fields are converted the way Spring Boot does
+        ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withUserConfiguration(SchedulingConfig.class)
+                .withBean(RateHistoryRepository.class, () -> mock(RateHistoryRepository.class))
+                .withBean(RateHistoryService.class);
+
+        // Act & Assert
+        contextRunner.run(context -> {
+            List<CronTask> tasks = context.getBean(ScheduledTaskHolder.class).getScheduledTasks().stream()
+                    .map(ScheduledTask::getTask)
+                    .filter(CronTask.class::isInstance)
+                    .map(CronTask.class::cast)
+                    .filter(task -> task.getRunnable() instanceof ScheduledMethodRunnable runnable
+                            && runnable.getMethod().getName().equals("maintainPartitions"))
+                    .toList();
+            assertEquals(1, tasks.size());
+            assertEquals("0 5 0 * * *", tasks.get(0).getExpression());
+        });
+    }
+
+    @Test
+    void testSeries_readsOneWindowPerQuery() {
+        // Arrange
+        RateHistoryRepository repository = mock(RateHistoryRepository.class);
+        RateHistoryService service = new RateHistoryService(repository);
+        service.pageSize = 2;
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = from.plus(Duration.ofHours(5));
+        RatePoint first = new RatePoint(from.toEpochMilli(), 1, 1, 1, 1, 1);
+        RatePoint last = new RatePoint(from.plus(Duration.ofHours(4)).toEpochMilli(), 2, 2, 2, 2, 1);
+        when(repository.findSeries(eq("GBP"), eq("EUR"), eq(from), any(), any(), eq(Duration.ofHours(1))))
+                .thenReturn(List.of(first)).thenReturn(List.<RatePoint>of()).thenReturn(List.of(last));
+        List<RatePoint> points = new ArrayList<>();
+
+        // Act
+        service.series("GBP", "EUR", from, to, Duration.ofHours(1), points::add);
+
+        // Assert
+        assertEquals(List.of(first, last), points);
+        verify(repository).findSeries("GBP", "EUR", from, from, from.plus(Duration.ofHours(2)), Duration.ofHours(1));
+        verify(repository).findSeries("GBP", "EUR", from, from.plus(Duration.ofHours(2)), from.plus(Duration.ofHours(4)), Duration.ofHours(1));
+        verify(repository).findSeries("GBP", "EUR", from, from.plus(Duration.ofHours(4)), to, Duration.ofHours(1));
+        verifyNoMoreInteractions(repository);
+    }
+}
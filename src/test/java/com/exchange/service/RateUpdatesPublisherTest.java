@@ -0,0 +1,97 @@
+package com.exchange.service;
+
+import com.exchange.dtos.ExchangeRate;
+import com.exchange.dtos.RatesUpdate;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.cache.ExchangeRatesStore;
+import com.exchange.service.open_exchange_impl.OpenExchangeCurrencyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RateUpdatesPublisherTest {
+
+    @Test
+    void testUpdate_listsChangedAndRemovedCurrencies() {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        ExchangeRatesSnapshot previous = store.replaceAll(Map.of("USD", rate("USD"), "EUR", rate("EUR"), "GBP", rate("GBP")));
+        ExchangeRatesSnapshot published = store.apply(Map.of("GBP", rate("GBP"), "JPY", rate("JPY")), List.of("EUR"));
+
+        // Act
+        RatesUpdate update = RateUpdatesPublisher.update(previous, published, Set.of());
+
+        // Assert
+        assertEquals(published.getVersion(), update.getVersion());
+        assertEquals(Set.of("GBP", "JPY"), Set.copyOf(update.getChanged()));
+        assertEquals(List.of("EUR"), update.getRemoved());
+        assertNull(update.getRates());
+    }
+
+    @Test
+    void testUpdate_carriesChangedRatesOfSubscribedBases() {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        ExchangeRatesSnapshot previous = store.replaceAll(Map.of("USD", rate("USD"), "GBP", rate("GBP")));
+        ExchangeRatesSnapshot published = store.put("GBP", rate("GBP"));
+
+        // Act
+        RatesUpdate gbp = RateUpdatesPublisher.update(previous, published, Set.of("GBP", "USD"));
+        RatesUpdate usd = RateUpdatesPublisher.update(previous, published, Set.of("USD"));
+
+        // Assert
+        assertEquals(List.of(published.get("GBP")), gbp.getRates());
+        assertNull(usd);
+    }
+
+    @Test
+    void testOnPublish_whenPublishesAreReportedOutOfOrder() throws Exception {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        OpenExchangeCurrencyService currencyService = mock(OpenExchangeCurrencyService.class);
+        when(currencyService.getSnapshot()).thenReturn(store.replaceAll(Map.of("USD", rate("USD"), "GBP", rate("GBP"))));
+        RateUpdatesPublisher publisher = new RateUpdatesPublisher(currencyService, Duration.ofMinutes(1), 1);
+        BlockingQueue<RatesUpdate> sent = new LinkedBlockingQueue<>();
+        publisher.subscribe(Set.of(), new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                builder.build().stream()
+                        .filter(data -> data.getData() instanceof RatesUpdate)
+                        .forEach(data -> sent.add((RatesUpdate) data.getData()));
+            }
+        });
+        ExchangeRatesSnapshot first = store.snapshot();
+        ExchangeRatesSnapshot older = store.put("USD", rate("USD"));
+        ExchangeRatesSnapshot newer = store.put("GBP", rate("GBP"));
+        ExchangeRatesSnapshot last = store.put("EUR", rate("EUR"));
+
+        // Act
+        publisher.onPublish(older, newer);
+        publisher.onPublish(first, older);
+        publisher.onPublish(newer, last);
+
+        // Assert
+        RatesUpdate update = sent.poll(5, TimeUnit.SECONDS);
+        assertEquals(newer.getVersion(), update.getVersion());
+        assertEquals(Set.of("USD", "GBP"), Set.copyOf(update.getChanged()));
+        RatesUpdate next = sent.poll(5, TimeUnit.SECONDS);
+        assertEquals(last.getVersion(), next.getVersion());
+        assertEquals(List.of("EUR"), next.getChanged());
+        publisher.shutdown();
+        assertTrue(sent.isEmpty());
+    }
+
+    private static ExchangeRate rate(String base) {
+        return new ExchangeRate(1L, base, Map.of(base, 1.0));
+    }
+}
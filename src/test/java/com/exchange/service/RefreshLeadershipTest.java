@@ -0,0 +1,66 @@
+package com.exchange.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RefreshLeadershipTest {
+
+    private RefreshLeadership leadership;
+    private Connection connection;
+
+    @BeforeEach
+    public void setUp() {
+        leadership = spy(new RefreshLeadership(mock(HikariDataSource.class)));
+        leadership.pollInterval = Duration.ZERO;
+        connection = mock(Connection.class);
+        doReturn(connection).when(leadership).connect();
+    }
+
+    @Test
+    void testAcquire_pollsOnOneConnection() throws Exception {
+        // Arrange
+        doReturn(false, false, true).when(leadership).tryLock(connection);
+
+        // Act
+        RefreshLeadership.Lease lease = leadership.acquire();
+
+        // Assert
+        assertNotNull(lease);
+        verify(leadership, times(1)).connect();
+        verify(leadership, times(3)).tryLock(connection);
+        verify(connection, never()).close();
+    }
+
+    @Test
+    void testAcquire_whenLockIsHeldForTooLong() throws Exception {
+        // Arrange
+        leadership.maxWait = Duration.ofMillis(20);
+        leadership.pollInterval = Duration.ofMillis(5);
+        doReturn(false).when(leadership).tryLock(connection);
+
+        // Act
+        RefreshLeadership.Lease lease = leadership.acquire();
+
+        // Assert
+        assertNull(lease);
+        verify(leadership, times(1)).connect();
+        verify(connection).close();
+    }
+
+    @Test
+    void testAcquire_whenLockQueryFails() throws Exception {
+        // Arrange
+        doThrow(new IllegalStateException("Connection reset")).when(leadership).tryLock(connection);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> leadership.acquire());
+        verify(connection).close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.exchange.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshSchedulerTest {
+
+    private RefreshScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new RefreshScheduler();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testDelayAfter_whenSucceeded() {
+        // Act
+        Duration delay = scheduler.delayAfter(RefreshScheduler.Outcome.SUCCEEDED);
+
+        // Assert
+        assertTrue(delay.compareTo(Duration.ofHours(1)) >= 0);
+        assertTrue(delay.compareTo(Duration.ofMinutes(63)) <= 0);
+    }
+
+    @Test
+    void testDelayAfter_backsOffExponentiallyUntilSuccess() {
+        // Arrange
+        scheduler.jitter = 0;
+
+        // Act
+        Duration first = scheduler.delayAfter(RefreshScheduler.Outcome.PARTIAL);
+        Duration second = scheduler.delayAfter(RefreshScheduler.Outcome.FAILED);
+        Duration third = scheduler.delayAfter(RefreshScheduler.Outcome.PARTIAL);
+        for (int i = 0; i < 30; i++) {
+            scheduler.delayAfter(RefreshScheduler.Outcome.FAILED);
+        }
+        Duration capped = scheduler.delayAfter(RefreshScheduler.Outcome.FAILED);
+        scheduler.delayAfter(RefreshScheduler.Outcome.IDLE);
+        Duration afterSuccess = scheduler.delayAfter(RefreshScheduler.Outcome.FAILED);
+
+        // Assert
+        assertEquals(Duration.ofSeconds(30), first);
+        assertEquals(Duration.ofSeconds(60), second);
+        assertEquals(Duration.ofSeconds(120), third);
+        assertEquals(Duration.ofMinutes(30), capped);
+        assertEquals(Duration.ofSeconds(30), afterSuccess);
+    }
+
+    @Test
+    void testStartBlocking_whenRunThrows() {
+        // Arrange
+        scheduler.jitter = 0;
+        long before = System.currentTimeMillis();
+
+        // Act
+        scheduler.startBlocking(() -> {
+            throw new RuntimeException("Third party is down");
+        });
+
+        // Assert
+        long delay = scheduler.getNextRunAt() - before;
+        assertTrue(delay >= Duration.ofSeconds(30).toMillis());
+        assertTrue(delay < Duration.ofSeconds(31).toMillis());
+    }
+
+    @Test
+    void testStartBlocking_whenRunThrowsError() {
+        // Arrange
+        scheduler.jitter = 0;
+        long before = System.currentTimeMillis();
+
+        // Act
+        assertThrows(StackOverflowError.class, () -> scheduler.startBlocking(() -> {
+            throw new StackOverflowError();
+        }));
+
+        // Assert
+        long delay = scheduler.getNextRunAt() - before;
+        assertTrue(delay >= Duration.ofSeconds(30).toMillis());
+        assertTrue(delay < Duration.ofSeconds(31).toMillis());
+    }
+
+    @Test
+    void testGetNextRunAt_whenNotStarted() {
+        // Assert
+        assertEquals(-1, scheduler.getNextRunAt());
+    }
+}
@@ -0,0 +1,108 @@
+package com.exchange.service;
+
+import com.exchange.dtos.ExchangeRate;
+import com.exchange.service.cache.ExchangeRatesSnapshot;
+import com.exchange.service.cache.ExchangeRatesStore;
+import com.exchange.service.open_exchange_impl.OpenExchangeCurrencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RenderedExchangeRatesTest {
+
+    @Mock
+    private OpenExchangeCurrencyService currencyService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExchangeRatesStore store = new ExchangeRatesStore();
+    private RenderedExchangeRates renderedRates;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(currencyService.getSnapshot()).thenReturn(store.snapshot());
+        doAnswer(invocation -> {
+            store.addListener(invocation.getArgument(0, BiConsumer.class));
+            return null;
+        }).when(currencyService).addSnapshotListener(any());
+        renderedRates = new RenderedExchangeRates(objectMapper, currencyService);
+    }
+
+    @Test
+    void testGet_rendersOnPublish() throws Exception {
+        // Arrange
+        ExchangeRatesSnapshot snapshot = store.replaceAll(Map.of("USD", new ExchangeRate(1L, "USD", Map.of("GBP", 0.8))));
+        ExchangeRate rate = snapshot.get("USD");
+
+        // Act
+        RenderedExchangeRates.Body body = renderedRates.get("USD", rate);
+
+        // Assert
+        assertSame(body, renderedRates.get("USD", rate));
+        assertArrayEquals(objectMapper.writeValueAsBytes(rate), body.json());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.gzip()))) {
+            assertArrayEquals(body.json(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testGet_keepsBodiesOfUnchangedCurrencies() {
+        // Arrange
+        store.replaceAll(Map.of("USD", new ExchangeRate(1L, "USD", Map.of("GBP", 0.8))));
+        ExchangeRate usd = store.get("USD");
+        RenderedExchangeRates.Body before = renderedRates.get("USD", usd);
+
+        // Act
+        ExchangeRatesSnapshot snapshot = store.put("EUR", new ExchangeRate(1L, "EUR", Map.of("GBP", 0.9)));
+
+        // Assert
+        assertSame(before, renderedRates.get("USD", snapshot.get("USD")));
+        assertSame(renderedRates.get("EUR", snapshot.get("EUR")), renderedRates.get("EUR", snapshot.get("EUR")));
+    }
+
+    @Test
+    void testGet_whenRateIsNotRendered() {
+        // Arrange
+        ExchangeRate rate = new ExchangeRate(1L, "USD", Map.of("GBP", 0.8));
+
+        // Act
+        RenderedExchangeRates.Body body = renderedRates.get("USD", rate);
+
+        // Assert
+        assertSame(rate, body.rate());
+        assertNotSame(body, renderedRates.get("USD", rate));
+    }
+
+    @Test
+    void testRender_whenRatesAreInAnotherOrder() {
+        // Arrange
+        Map<String, Double> first = new LinkedHashMap<>();
+        first.put("GBP", 0.8);
+        first.put("EUR", 0.9);
+        Map<String, Double> second = new LinkedHashMap<>();
+        second.put("EUR", 0.9);
+        second.put("GBP", 0.8);
+
+        // Act
+        RenderedExchangeRates.Body one = renderedRates.render(new ExchangeRate(1L, "USD", first));
+        RenderedExchangeRates.Body other = renderedRates.render(new ExchangeRate(1L, "USD", second));
+
+        // Assert
+        assertArrayEquals(one.json(), other.json());
+        assertEquals(one.tag(), other.tag());
+        assertTrue(one.tag().startsWith("1-"));
+    }
+}
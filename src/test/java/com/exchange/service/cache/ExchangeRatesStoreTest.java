@@ -0,0 +1,54 @@
+package com.exchange.service.cache;
+
+import com.exchange.dtos.ExchangeRate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeRatesStoreTest {
+
+    @Test
+    void testReplaceAll_publishesNewVersion() {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        ExchangeRatesSnapshot before = store.snapshot();
+
+        // Act
+        ExchangeRatesSnapshot after = store.replaceAll(Map.of("USD", new ExchangeRate()));
+
+        // Assert
+        assertEquals(0, before.getVersion());
+        assertEquals(1, after.getVersion());
+        assertSame(after, store.snapshot());
+        assertTrue(store.contains("USD"));
+        assertFalse(before.contains("USD"));
+    }
+
+    @Test
+    void testPut_keepsPreviousSnapshotUnchanged() {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        ExchangeRatesSnapshot first = store.replaceAll(Map.of("USD", new ExchangeRate()));
+
+        // Act
+        ExchangeRatesSnapshot second = store.put("EUR", new ExchangeRate());
+
+        // Assert
+        assertEquals(first.getVersion() + 1, second.getVersion());
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertTrue(second.getCurrencies().contains("EUR"));
+    }
+
+    @Test
+    void testSnapshot_isImmutable() {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        store.replaceAll(Map.of("USD", new ExchangeRate()));
+
+        // Act & Assert
+        assertThrows(UnsupportedOperationException.class, () -> store.snapshot().getCurrencies().remove("USD"));
+    }
+}
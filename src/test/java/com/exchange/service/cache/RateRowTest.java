@@ -0,0 +1,73 @@
+package com.exchange.service.cache;
+
+import com.exchange.dtos.ExchangeRate;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateRowTest {
+
+    @Test
+    void testCopyOf_behavesLikeSourceMap() {
+        // Arrange
+        CurrencyIndex index = new CurrencyIndex();
+        Map<String, Double> source = Map.of("USD", 1.0, "EUR", 0.92, "GBP", 0.79);
+
+        // Act
+        RateRow row = RateRow.copyOf(index, source);
+
+        // Assert
+        assertEquals(source, row);
+        assertEquals(new HashMap<>(source), new HashMap<>(row));
+        assertEquals(3, row.size());
+        assertEquals(0.92, row.get("EUR"));
+        assertNull(row.get("UAH"));
+        assertFalse(row.containsKey("UAH"));
+    }
+
+    @Test
+    void testRate_returnsNaNForUnknownColumn() {
+        // Arrange
+        CurrencyIndex index = new CurrencyIndex();
+        RateRow row = RateRow.copyOf(index, Map.of("USD", 1.0));
+        index.intern("EUR");
+
+        // Act & Assert
+        assertEquals(1.0, row.rate("USD"));
+        assertTrue(Double.isNaN(row.rate("EUR")));
+        assertTrue(Double.isNaN(row.rate("UAH")));
+    }
+
+    @Test
+    void testRowsShareIndex() {
+        // Arrange
+        CurrencyIndex index = new CurrencyIndex();
+
+        // Act
+        RateRow first = RateRow.copyOf(index, Map.of("USD", 1.0, "EUR", 0.92));
+        RateRow second = RateRow.copyOf(index, Map.of("EUR", 1.0, "USD", 1.08));
+
+        // Assert
+        assertEquals(2, index.size());
+        assertSame(first.getIndex(), second.getIndex());
+        assertEquals(0.92, first.rate(index.indexOf("EUR")));
+        assertEquals(1.08, second.rate(index.indexOf("USD")));
+    }
+
+    @Test
+    void testExchangeRateRateFor() {
+        // Arrange
+        CurrencyIndex index = new CurrencyIndex();
+        ExchangeRate boxed = new ExchangeRate(0, "USD", Map.of("EUR", 0.92));
+        ExchangeRate compact = new ExchangeRate(0, "USD", RateRow.copyOf(index, Map.of("EUR", 0.92)));
+
+        // Act & Assert
+        assertEquals(0.92, boxed.rateFor("EUR"));
+        assertEquals(0.92, compact.rateFor("EUR"));
+        assertTrue(Double.isNaN(compact.rateFor("GBP")));
+        assertEquals(boxed, compact);
+    }
+}
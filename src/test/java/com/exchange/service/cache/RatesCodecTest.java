@@ -0,0 +1,104 @@
+package com.exchange.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RatesCodecTest {
+
+    @Test
+    void testEncodeDecode() {
+        // Arrange
+        CurrencyIndex index = new CurrencyIndex();
+        Map<String, Double> rates = Map.of("USD", 1.0, "EUR", 0.9234567891234, "BTC", 0.0000153, "LONGCODE", 42.0);
+
+        // Act
+        byte[] packed = RatesCodec.encode(rates);
+        RateRow row = RatesCodec.decode(index, packed);
+
+        // Assert
+        assertEquals(rates, row);
+        assertEquals(3 + 3 * (1 + 3 + 8) + (1 + 8 + 8), packed.length);
+    }
+
+    @Test
+    void testDecode_consecutiveRows() {
+        // Arrange
+        CurrencyIndex index = new CurrencyIndex();
+        byte[] first = RatesCodec.encode(Map.of("USD", 1.0));
+        byte[] second = RatesCodec.encode(Map.of("EUR", 2.0, "USD", 3.0));
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length).put(first).put(second).flip();
+
+        // Act
+        RateRow firstRow = RatesCodec.decode(index, buffer);
+        RateRow secondRow = RatesCodec.decode(index, buffer);
+
+        // Assert
+        assertEquals(Map.of("USD", 1.0), firstRow);
+        assertEquals(Map.of("EUR", 2.0, "USD", 3.0), secondRow);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testFingerprint() {
+        // Arrange
+        byte[] packed = RatesCodec.encode(Map.of("USD", 1.0));
+        byte[] same = RatesCodec.encode(Map.of("USD", 1.0));
+        byte[] changed = RatesCodec.encode(Map.of("USD", 1.0000001));
+
+        // Act & Assert
+        assertEquals(RatesCodec.fingerprint(packed), RatesCodec.fingerprint(same));
+        assertNotEquals(RatesCodec.fingerprint(packed), RatesCodec.fingerprint(changed));
+    }
+
+    @Test
+    void testFingerprint_whenCodesAreInsertedInAnotherOrder() {
+        // Arrange
+        Map<String, Double> first = new LinkedHashMap<>();
+        first.put("USD", 1.0);
+        first.put("EUR", 0.9);
+        first.put("GBP", 0.8);
+        Map<String, Double> second = new LinkedHashMap<>();
+        second.put("GBP", 0.8);
+        second.put("USD", 1.0);
+        second.put("EUR", 0.9);
+        CurrencyIndex otherIndex = new CurrencyIndex();
+        otherIndex.intern("GBP");
+        otherIndex.intern("EUR");
+
+        // Act
+        byte[] packed = RatesCodec.encode(first);
+        byte[] reordered = RatesCodec.encode(second);
+        byte[] fromRow = RatesCodec.encode(RateRow.copyOf(otherIndex, first));
+
+        // Assert
+        assertArrayEquals(packed, reordered);
+        assertArrayEquals(packed, fromRow);
+        assertEquals(RatesCodec.fingerprint(packed), RatesCodec.fingerprint(reordered));
+    }
+
+    @Test
+    void testRateOf() {
+        // Arrange
+        byte[] packed = RatesCodec.encode(Map.of("USD", 1.25, "EUR", 0.9, "LONGCODE", 42.0));
+
+        // Act & Assert
+        assertEquals(1.25, RatesCodec.rateOf(packed, "USD"));
+        assertEquals(42.0, RatesCodec.rateOf(packed, "LONGCODE"));
+        assertTrue(Double.isNaN(RatesCodec.rateOf(packed, "GBP")));
+    }
+
+    @Test
+    void testDecode_whenVersionIsUnknown() {
+        // Arrange
+        byte[] packed = RatesCodec.encode(Map.of("USD", 1.0));
+        packed[0] = 42;
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> RatesCodec.decode(new CurrencyIndex(), packed));
+    }
+}
@@ -0,0 +1,67 @@
+package com.exchange.service.cache;
+
+import com.exchange.dtos.ExchangeRate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testWriteRead() throws Exception {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        store.replaceAll(Map.of(
+                "USD", new ExchangeRate(10L, "USD", Map.of("USD", 1.0, "EUR", 0.9)),
+                "EUR", new ExchangeRate(20L, "EUR", Map.of("USD", 1.1, "EUR", 1.0))));
+        Path path = dir.resolve("cache").resolve("rates.snapshot");
+        CurrencyIndex index = new CurrencyIndex();
+
+        // Act
+        SnapshotFile.write(path, store.snapshot(), 20L);
+        SnapshotFile.Content content = SnapshotFile.read(path, index);
+
+        // Assert
+        assertEquals(20L, content.watermark());
+        assertEquals(2, content.rates().size());
+        assertEquals(20L, content.rates().get("EUR").getTimestamp());
+        assertEquals("EUR", content.rates().get("EUR").getBase());
+        assertEquals(Map.of("USD", 1.1, "EUR", 1.0), content.rates().get("EUR").getRates());
+        assertInstanceOf(RateRow.class, content.rates().get("USD").getRates());
+        assertFalse(Files.exists(dir.resolve("cache").resolve("rates.snapshot.tmp")));
+    }
+
+    @Test
+    void testRead_whenFileIsTruncated() throws Exception {
+        // Arrange
+        ExchangeRatesStore store = new ExchangeRatesStore();
+        store.replaceAll(Map.of("USD", new ExchangeRate(10L, "USD", Map.of("USD", 1.0))));
+        Path path = dir.resolve("rates.snapshot");
+        SnapshotFile.write(path, store.snapshot(), 10L);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> SnapshotFile.read(path, new CurrencyIndex()));
+    }
+
+    @Test
+    void testRead_whenNotSnapshotFile() throws Exception {
+        // Arrange
+        Path path = dir.resolve("rates.snapshot");
+        Files.writeString(path, "{\"rates\":{}}");
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> SnapshotFile.read(path, new CurrencyIndex()));
+    }
+}
@@ -1,21 +1,44 @@
 package com.exchange.service.open_exchange_impl;
 
+import com.exchange.dtos.ConversionRequest;
+import com.exchange.dtos.ConversionResult;
 import com.exchange.dtos.ExchangeRate;
 import com.exchange.repository.BulkDBUpdater;
 import com.exchange.repository.CurrencyRepository;
 import com.exchange.repository.entities.Currency;
 import com.exchange.service.ConfigurationService;
+import com.exchange.service.CurrencyChangeNotifications;
+import com.exchange.service.CurrencyMetrics;
+import com.exchange.service.RateHistoryService;
+import com.exchange.service.RefreshLeadership;
+import com.exchange.service.RefreshScheduler;
 import com.exchange.service.TransactionalInvoker;
+import com.exchange.service.cache.CurrencyIndex;
+import com.exchange.service.cache.RateRow;
+import com.exchange.service.cache.ExchangeRatesStore;
+import com.exchange.service.cache.RatesCodec;
+import com.exchange.service.cache.SnapshotFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.mutable.MutableBoolean;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -40,11 +63,34 @@ class OpenExchangeCurrencyServiceUnitTests {
     @Mock
     private BulkDBUpdater bulkDBUpdater;
 
+    @Mock
+    private RateHistoryService rateHistory;
+
+    @Mock
+    private RefreshLeadership refreshLeadership;
+
+    @Mock
+    private RefreshScheduler refreshScheduler;
+
+    @Mock
+    private CurrencyChangeNotifications changeNotifications;
+
     private OpenExchangeCurrencyService service;
 
+    private ExecutorService workersExecutor;
+
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     public void setUp() {
-        service = new OpenExchangeCurrencyService(openExchangeExternalAPIService, transactionalInvoker, configurationService, currencyRepository, bulkDBUpdater);
+        workersExecutor = Executors.newCachedThreadPool();
+        meterRegistry = new SimpleMeterRegistry();
+        service = new OpenExchangeCurrencyService(openExchangeExternalAPIService, transactionalInvoker, configurationService, currencyRepository, bulkDBUpdater, new CurrencyMetrics(meterRegistry), rateHistory, refreshLeadership, refreshScheduler, changeNotifications, workersExecutor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        workersExecutor.shutdownNow();
     }
 
     @Test
@@ -53,7 +99,7 @@ class OpenExchangeCurrencyServiceUnitTests {
         Map<String, ExchangeRate> exchangeRates = new HashMap<>();
         exchangeRates.put("USD", new ExchangeRate());
         exchangeRates.put("EUR", new ExchangeRate());
-        service.exchangeRates = exchangeRates;
+        service.exchangeRates.replaceAll(exchangeRates);
 
         // Act
         Set<String> currencies = service.getCurrencies();
@@ -77,9 +123,54 @@ class OpenExchangeCurrencyServiceUnitTests {
         assertEquals(exchangeRate, result);
     }
 
+    @Test
+    void testGetExchangeRates_whenLowerCaseIsCached() {
+        // Arrange
+        service.exchangeRates.put("USD", new ExchangeRate(1L, "USD", Map.of("GBP", 0.8)));
+
+        // Act
+        ExchangeRate result = service.getExchangeRates("usd");
+
+        // Assert
+        assertSame(service.exchangeRates.get("USD"), result);
+        assertEquals(1.0, meterRegistry.get("exchange.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(0.0, meterRegistry.get("exchange.cache.requests").tag("result", "miss").counter().count());
+        verifyNoInteractions(openExchangeExternalAPIService);
+    }
+
     @Test
     void testGetExchangeRates_whenCurrencyDoesNotExist() {
         // Arrange
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+
+        // Act
+        ExchangeRate result = service.getExchangeRates("GBP");
+
+        // Assert
+        assertNotNull(result);
+        assertEquals("GBP", result.getBase());
+        assertEquals(1.25, result.getRates().get("USD"), 1e-9);
+        assertTrue(service.exchangeRates.contains("GBP"));
+        verify(openExchangeExternalAPIService, never()).fetchExchangeRate(any());
+    }
+
+    @Test
+    void testGetExchangeRates_whenCurrencyHasNoUsdRate() {
+        // Arrange
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+
+        // Act
+        assertThrows(RuntimeException.class, () -> service.getExchangeRates("XXX"));
+
+        // Assert
+        assertFalse(service.exchangeRates.contains("XXX"));
+        verify(currencyRepository, never()).save(any());
+    }
+
+    @Test
+    void testGetExchangeRates_whenCurrencyDoesNotExist_perBase() {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
         ExchangeRate exchangeRate = new ExchangeRate();
         exchangeRate.setBase("GBP");
         exchangeRate.setRates(Map.of("USD", 1.23));
@@ -90,19 +181,119 @@ class OpenExchangeCurrencyServiceUnitTests {
 
         // Assert
         assertNotNull(result);
-        assertTrue(service.exchangeRates.containsKey("GBP"));
+        assertTrue(service.exchangeRates.contains("GBP"));
+        verify(openExchangeExternalAPIService, never()).fetchLatestRates();
+    }
+
+    @Test
+    void testGetExchangeRates_whenLowerCase() {
+        // Arrange
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+
+        // Act
+        ExchangeRate result = service.getExchangeRates("gbp");
+
+        // Assert
+        assertEquals("GBP", result.getBase());
+        assertTrue(service.exchangeRates.contains("GBP"));
+        assertFalse(service.exchangeRates.contains("gbp"));
+    }
+
+    @Test
+    void testGetExchangeRates_concurrentMissesShareOneFetch() throws Exception {
+        // Arrange
+        int callers = 16;
+        CountDownLatch release = new CountDownLatch(1);
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenAnswer(invocation -> {
+            release.await();
+            return usdRates();
+        });
+        ExecutorService callersExecutor = Executors.newFixedThreadPool(callers);
+        List<Future<ExchangeRate>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < callers; i++) {
+                results.add(callersExecutor.submit(() -> service.getExchangeRates("GBP")));
+            }
+            while (!service.inFlight.containsKey("GBP")) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            // Assert
+            for (Future<ExchangeRate> result : results) {
+                assertEquals("GBP", result.get(10, TimeUnit.SECONDS).getBase());
+            }
+        } finally {
+            callersExecutor.shutdownNow();
+        }
+        verify(openExchangeExternalAPIService, times(1)).fetchLatestRates();
+        verify(openExchangeExternalAPIService, times(1)).getCurrencyName("GBP");
+        verify(currencyRepository, times(1)).save(any(Currency.class));
+        assertTrue(service.inFlight.isEmpty());
+    }
+
+    @Test
+    void testLoadCurrency_whenFlightFails() {
+        // Arrange
+        CompletableFuture<ExchangeRate> flight = new CompletableFuture<>();
+        flight.completeExceptionally(new RuntimeException("Currency not found"));
+        service.inFlight.put("GBP", flight);
+
+        // Act
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> service.loadCurrency("GBP"));
+
+        // Assert
+        assertEquals("Currency not found", ex.getMessage());
+        verifyNoInteractions(openExchangeExternalAPIService);
+    }
+
+    @Test
+    void testLoadCurrency_whenLoaderThrowsError() throws Exception {
+        // Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            throw new LinkageError("Class can't be loaded");
+        });
+        ExecutorService callersExecutor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> loader = callersExecutor.submit(() -> service.loadCurrency("GBP"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<?> waiter = callersExecutor.submit(() -> service.loadCurrency("GBP"));
+            //the waiter joins the loader's flight
+            while (service.inFlight.get("GBP").getNumberOfDependents() == 0) {
+                Thread.onSpinWait();
+            }
+
+            // Act
+            release.countDown();
+
+            // Assert
+            ExecutionException loaderEx = assertThrows(ExecutionException.class, () -> loader.get(5, TimeUnit.SECONDS));
+            ExecutionException waiterEx = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(LinkageError.class, loaderEx.getCause());
+            assertInstanceOf(LinkageError.class, waiterEx.getCause());
+        } finally {
+            callersExecutor.shutdownNow();
+        }
+        verify(openExchangeExternalAPIService, times(1)).fetchLatestRates();
+        assertTrue(service.inFlight.isEmpty());
     }
 
     @Test
     void testGetExchangeRates_whenExceptionIsThrown() {
         // Arrange
-        when(openExchangeExternalAPIService.fetchExchangeRate("GBP")).thenThrow(new RuntimeException());
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenThrow(new RuntimeException());
 
         // Act
         assertThrows(RuntimeException.class, () -> service.getExchangeRates("GBP"));
 
         // Assert
-        assertFalse(service.exchangeRates.containsKey("GBP"));
+        assertFalse(service.exchangeRates.contains("GBP"));
     }
 
     @Test
@@ -111,14 +302,33 @@ class OpenExchangeCurrencyServiceUnitTests {
         ExchangeRate exchangeRate = new ExchangeRate();
         exchangeRate.setBase("GBP");
         exchangeRate.setRates(Map.of("USD", 1.23));
-        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound"));
+        when(openExchangeExternalAPIService.getCurrencyName("GBP")).thenReturn("British Pound");
 
         // Act
         service.prepareAndSaveNewCurrency("GBP", exchangeRate);
 
         // Assert
-        verify(currencyRepository).save(any(Currency.class));
-        assertTrue(service.exchangeRates.containsKey("GBP"));
+        verify(currencyRepository).save(argThat(currency -> "British Pound".equals(currency.getCurrencyFullName())));
+        verify(openExchangeExternalAPIService, never()).getCurrencies();
+        assertTrue(service.exchangeRates.contains("GBP"));
+    }
+
+    @Test
+    void testPrepareAndSaveNewCurrency_cachesUpdatedAt() {
+        // Arrange
+        //the third party's timestamp is in seconds, a reload caches 'updated_at' in millis
+        ExchangeRate exchangeRate = new ExchangeRate(1_700_000_000L, "GBP", Map.of("USD", 1.23));
+        when(openExchangeExternalAPIService.getCurrencyName("GBP")).thenReturn("British Pound");
+        ArgumentCaptor<Currency> saved = ArgumentCaptor.forClass(Currency.class);
+
+        // Act
+        service.prepareAndSaveNewCurrency("GBP", exchangeRate);
+
+        // Assert
+        verify(currencyRepository).save(saved.capture());
+        ExchangeRate cached = service.exchangeRates.get("GBP");
+        assertEquals(saved.getValue().getUpdatedAt(), cached.getTimestamp());
+        assertEquals(Map.of("USD", 1.23), cached.getRates());
     }
 
     @Test
@@ -129,12 +339,16 @@ class OpenExchangeCurrencyServiceUnitTests {
         exchangeRate.setRates(Map.of("USD", 1.23));
 
         // Act
-        Currency currency = service.prepareCurrencyEntity("GBP", exchangeRate, "British Pound", System.currentTimeMillis());
+        long currTime = System.currentTimeMillis();
+        Currency currency = service.prepareCurrencyEntity("GBP", exchangeRate, "British Pound", currTime);
 
         // Assert
         assertEquals("GBP", currency.getCurrencyName());
         assertEquals("British Pound", currency.getCurrencyFullName());
         assertNotNull(currency.getRates());
+        assertEquals(Map.of("USD", 1.23), RatesCodec.decode(new CurrencyIndex(), currency.getRates()));
+        assertEquals(RatesCodec.fingerprint(currency.getRates()), currency.getRatesHash());
+        assertEquals(currTime, currency.getLastSeenAt());
     }
 
     @Test
@@ -142,19 +356,369 @@ class OpenExchangeCurrencyServiceUnitTests {
         // Arrange
         Currency currency1 = new Currency();
         currency1.setCurrencyName("USD");
-        currency1.setRates("{\"USD\":1.0}");
+        currency1.setRates(RatesCodec.encode(Map.of("USD", 1.0)));
         Currency currency2 = new Currency();
         currency2.setCurrencyName("EUR");
-        currency2.setRates("{\"EUR\":1.0}");
+        currency2.setRates(RatesCodec.encode(Map.of("EUR", 1.0)));
         when(currencyRepository.findAll()).thenReturn(List.of(currency1, currency2));
 
         // Act
         service.initCachedCurrenciesData();
 
         // Assert
-        assertEquals(2, service.exchangeRates.size());
-        assertTrue(service.exchangeRates.containsKey("USD"));
-        assertTrue(service.exchangeRates.containsKey("EUR"));
+        assertEquals(2, service.exchangeRates.snapshot().size());
+        assertTrue(service.exchangeRates.contains("USD"));
+        assertTrue(service.exchangeRates.contains("EUR"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInit_whenLocalSnapshotExists(@TempDir Path dir) throws Exception {
+        // Arrange
+        ExchangeRatesStore saved = new ExchangeRatesStore();
+        saved.replaceAll(Map.of("USD", new ExchangeRate(10L, "USD", Map.of("USD", 1.0)),
+                "EUR", new ExchangeRate(10L, "EUR", Map.of("EUR", 1.0))));
+        Path path = dir.resolve("rates.snapshot");
+        SnapshotFile.write(path, saved.snapshot(), 10L);
+        service.snapshotPath = path.toString();
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(refreshLeadership.acquire()).thenReturn(mock(RefreshLeadership.Lease.class));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis());
+        when(currencyRepository.findByUpdatedAtGreaterThan(10L - service.reloadLookback.toMillis())).thenReturn(List.of(currency("GBP", 20L)));
+        when(currencyRepository.count()).thenReturn(3L);
+
+        // Act
+        service.init();
+
+        // Assert
+        assertTrue(service.exchangeRates.contains("USD"));
+        assertTrue(service.exchangeRates.contains("EUR"));
+        assertFalse(service.exchangeRates.contains("GBP"));
+        ArgumentCaptor<Supplier<RefreshScheduler.Outcome>> task = ArgumentCaptor.forClass(Supplier.class);
+        verify(refreshScheduler).start(task.capture(), eq(Duration.ZERO));
+        assertEquals(RefreshScheduler.Outcome.IDLE, task.getValue().get());
+        assertTrue(service.exchangeRates.contains("GBP"));
+        verify(currencyRepository, never()).findAll();
+        verify(openExchangeExternalAPIService, never()).getCurrencies();
+    }
+
+    @Test
+    void testReconcile_whenLeaderAndRefreshIsDue() throws Exception {
+        // Arrange
+        RefreshLeadership.Lease lease = mock(RefreshLeadership.Lease.class);
+        when(refreshLeadership.acquire()).thenReturn(lease);
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis() - Duration.ofMinutes(59).toMillis() - 1);
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound"));
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+        when(configurationService.flush()).thenReturn(true);
+
+        // Act
+        service.reconcile();
+
+        // Assert
+        verify(configurationService).reload();
+        verify(openExchangeExternalAPIService).fetchLatestRates();
+        verify(configurationService).flush();
+        verify(changeNotifications).notifyChanged();
+        verify(lease).close();
+    }
+
+    @Test
+    void testReconcile_whenRetryIsQueued() throws Exception {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
+        when(refreshLeadership.acquire()).thenReturn(mock(RefreshLeadership.Lease.class));
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis() - Duration.ofMinutes(2).toMillis());
+        when(configurationService.getOpenExchangeFailOnLastIteration()).thenReturn(true);
+        when(configurationService.getOpenExchangeRetryCurrencies()).thenReturn(Set.of("EUR"));
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound", "EUR", "Euro"));
+        when(openExchangeExternalAPIService.fetchExchangeRate("EUR")).thenReturn(new ExchangeRate(1L, "EUR", Map.of("USD", 1.1)));
+        when(configurationService.flush()).thenReturn(true);
+
+        // Act
+        RefreshScheduler.Outcome outcome = service.reconcile();
+
+        // Assert
+        assertEquals(RefreshScheduler.Outcome.SUCCEEDED, outcome);
+        verify(openExchangeExternalAPIService).fetchExchangeRate("EUR");
+        verify(openExchangeExternalAPIService, never()).fetchExchangeRate("GBP");
+        verify(configurationService).setOpenExchangeRetryCurrencies(Set.of());
+        verify(configurationService).setOpenExchangeFailOnLastIteration(false);
+        verify(configurationService, never()).setFetchLastTimestamp(anyLong());
+        verify(configurationService).flush();
+    }
+
+    @Test
+    void testReconcile_whenOutcomeIsStoredOnRetry() throws Exception {
+        // Arrange
+        RefreshLeadership.Lease lease = mock(RefreshLeadership.Lease.class);
+        when(refreshLeadership.acquire()).thenReturn(lease);
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        service.flushRetryDelay = Duration.ZERO;
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound"));
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+        when(configurationService.flush()).thenReturn(false, true);
+
+        // Act
+        RefreshScheduler.Outcome outcome = service.reconcile();
+
+        // Assert
+        assertEquals(RefreshScheduler.Outcome.SUCCEEDED, outcome);
+        InOrder inOrder = inOrder(configurationService, lease);
+        inOrder.verify(configurationService, times(2)).flush();
+        inOrder.verify(lease).close();
+    }
+
+    @Test
+    void testReconcile_whenRefreshThrows() throws Exception {
+        // Arrange
+        RefreshLeadership.Lease lease = mock(RefreshLeadership.Lease.class);
+        when(refreshLeadership.acquire()).thenReturn(lease);
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound"));
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+        when(currencyRepository.findAll()).thenThrow(new IllegalStateException("Connection is closed"));
+        when(configurationService.flush()).thenReturn(true);
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> service.reconcile());
+
+        // Assert
+        InOrder inOrder = inOrder(configurationService, lease);
+        inOrder.verify(configurationService).setOpenExchangeFailOnLastIteration(true);
+        inOrder.verify(configurationService).flush();
+        inOrder.verify(lease).close();
+    }
+
+    @Test
+    void testReconcile_whenOutcomeCannotBeStored() throws Exception {
+        // Arrange
+        RefreshLeadership.Lease lease = mock(RefreshLeadership.Lease.class);
+        when(refreshLeadership.acquire()).thenReturn(lease);
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        service.flushTimeout = Duration.ofMillis(50);
+        service.flushRetryDelay = Duration.ofMillis(10);
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound"));
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+        when(configurationService.flush()).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> service.reconcile());
+        InOrder inOrder = inOrder(configurationService, lease);
+        inOrder.verify(configurationService, atLeast(2)).flush();
+        inOrder.verify(lease).close();
+    }
+
+    @Test
+    void testRetryFailedCurrencies_whenFetchFailsAgain() {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound", "EUR", "Euro"));
+        when(openExchangeExternalAPIService.fetchExchangeRate("EUR")).thenThrow(new RuntimeException("Too many requests"));
+
+        // Act
+        RefreshScheduler.Outcome outcome = service.retryFailedCurrencies(Set.of("EUR", "XXX"));
+
+        // Assert
+        assertEquals(RefreshScheduler.Outcome.PARTIAL, outcome);
+        verify(configurationService).setOpenExchangeRetryCurrencies(Set.of("EUR"));
+        verify(configurationService).setOpenExchangeFailOnLastIteration(true);
+        assertEquals(1, meterRegistry.get("exchange.refresh.retry").tag("outcome", "failed").timer().count());
+    }
+
+    @Test
+    void testRetryFailedCurrencies_recordsHistoryAtCycleTimestamp() {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
+        long cycleTimestamp = System.currentTimeMillis() - Duration.ofMinutes(5).toMillis();
+        when(configurationService.getFetchLastTimestamp()).thenReturn(cycleTimestamp);
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("EUR", "Euro"));
+        when(openExchangeExternalAPIService.fetchExchangeRate("EUR")).thenReturn(new ExchangeRate(1L, "EUR", Map.of("USD", 1.1)));
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(transactionalInvoker).invokeTransactional(any());
+
+        // Act
+        RefreshScheduler.Outcome outcome = service.retryFailedCurrencies(Set.of("EUR"));
+
+        // Assert
+        assertEquals(RefreshScheduler.Outcome.SUCCEEDED, outcome);
+        //the incremental reload still picks the row up by 'updated_at'
+        verify(rateHistory).record(argThat(currencies -> currencies.size() == 1
+                && currencies.get(0).getLastSeenAt() == cycleTimestamp
+                && currencies.get(0).getUpdatedAt() > cycleTimestamp));
+    }
+
+    @Test
+    void testTimeToNextRefresh_whenRunIsPlanned() {
+        // Arrange
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis() - Duration.ofMinutes(50).toMillis());
+        when(refreshScheduler.getNextRunAt()).thenReturn(System.currentTimeMillis() + Duration.ofMinutes(2).toMillis());
+
+        // Act
+        Duration left = service.timeToNextRefresh();
+
+        // Assert
+        assertTrue(left.compareTo(Duration.ofMinutes(2)) <= 0);
+        assertTrue(left.compareTo(Duration.ofMinutes(1)) > 0);
+    }
+
+    @Test
+    void testTimeToNextRefresh_whenAnotherNodeRefreshesFirst() {
+        // Arrange
+        //the last refresh was 58 minutes ago, the lock holder refreshes before this node's run in 10 minutes
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis() - Duration.ofMinutes(58).toMillis());
+        when(refreshScheduler.getNextRunAt()).thenReturn(System.currentTimeMillis() + Duration.ofMinutes(10).toMillis());
+
+        // Act
+        Duration left = service.timeToNextRefresh();
+
+        // Assert
+        assertTrue(left.compareTo(Duration.ofMinutes(2)) <= 0);
+        assertTrue(left.compareTo(Duration.ofMinutes(1)) > 0);
+    }
+
+    @Test
+    void testTimeToNextRefresh_whenNoRunIsPlanned() {
+        // Arrange
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis() - Duration.ofMinutes(58).toMillis());
+        when(refreshScheduler.getNextRunAt()).thenReturn(-1L);
+
+        // Act
+        Duration left = service.timeToNextRefresh();
+
+        // Assert
+        assertTrue(left.compareTo(Duration.ofMinutes(2)) <= 0);
+        assertTrue(left.compareTo(Duration.ofMinutes(1)) > 0);
+    }
+
+    @Test
+    void testReconcile_whenLeaderAndAlreadyRefreshed() throws Exception {
+        // Arrange
+        RefreshLeadership.Lease lease = mock(RefreshLeadership.Lease.class);
+        when(refreshLeadership.acquire()).thenReturn(lease);
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        when(configurationService.getFetchLastTimestamp()).thenReturn(System.currentTimeMillis() - Duration.ofMinutes(20).toMillis());
+
+        // Act
+        service.reconcile();
+
+        // Assert
+        verify(configurationService).reload();
+        verifyNoInteractions(openExchangeExternalAPIService);
+        verify(currencyRepository).findAll();
+        verify(lease).close();
+    }
+
+    @Test
+    void testReconcile_whenLockIsHeldByAnotherNode() throws Exception {
+        // Arrange
+        when(refreshLeadership.acquire()).thenReturn(null);
+
+        // Act
+        service.reconcile();
+
+        // Assert
+        verifyNoInteractions(openExchangeExternalAPIService);
+        verify(configurationService, never()).reload();
+        verify(currencyRepository).findAll();
+    }
+
+    @Test
+    void testRestoreLocalSnapshot_whenFileIsCorrupt(@TempDir Path dir) throws Exception {
+        // Arrange
+        Path path = dir.resolve("rates.snapshot");
+        Files.write(path, new byte[]{1, 2, 3});
+        service.snapshotPath = path.toString();
+
+        // Act
+        boolean restored = service.restoreLocalSnapshot();
+
+        // Assert
+        assertFalse(restored);
+        assertEquals(-1, service.cacheWatermark);
+        assertEquals(0, service.exchangeRates.snapshot().size());
+    }
+
+    @Test
+    void testReloadCachedCurrenciesData_appliesChangesAndRemovals() {
+        // Arrange
+        when(currencyRepository.findAll()).thenReturn(List.of(currency("USD", 10L), currency("EUR", 10L), currency("GBP", 10L)));
+        service.initCachedCurrenciesData();
+        long version = service.exchangeRates.snapshot().getVersion();
+        when(currencyRepository.findByUpdatedAtGreaterThan(10L - service.reloadLookback.toMillis())).thenReturn(List.of(currency("USD", 20L), currency("JPY", 20L)));
+        when(currencyRepository.count()).thenReturn(3L);
+        when(currencyRepository.findAllCurrencyNames()).thenReturn(List.of("USD", "GBP", "JPY"));
+
+        // Act
+        service.reloadCachedCurrenciesData();
+
+        // Assert
+        assertEquals(version + 1, service.exchangeRates.snapshot().getVersion());
+        assertEquals(Set.of("USD", "GBP", "JPY"), service.exchangeRates.snapshot().getCurrencies());
+        assertEquals(20L, service.cacheWatermark);
+        verify(currencyRepository, times(1)).findAll();
+    }
+
+    @Test
+    void testReloadCachedCurrenciesData_whenNothingIsRemoved() {
+        // Arrange
+        when(currencyRepository.findAll()).thenReturn(List.of(currency("USD", 10L)));
+        service.initCachedCurrenciesData();
+        long version = service.exchangeRates.snapshot().getVersion();
+        when(currencyRepository.findByUpdatedAtGreaterThan(10L - service.reloadLookback.toMillis())).thenReturn(List.of());
+        when(currencyRepository.count()).thenReturn(1L);
+
+        // Act
+        service.reloadCachedCurrenciesData();
+
+        // Assert
+        assertEquals(version, service.exchangeRates.snapshot().getVersion());
+        assertEquals(10L, service.cacheWatermark);
+        verify(currencyRepository, never()).findAllCurrencyNames();
+    }
+
+    @Test
+    void testReloadCachedCurrenciesData_skipsCachedRowsOfLookback() {
+        // Arrange
+        when(currencyRepository.findAll()).thenReturn(List.of(currency("USD", 10L), currency("EUR", 10L)));
+        service.initCachedCurrenciesData();
+        long version = service.exchangeRates.snapshot().getVersion();
+        ExchangeRate usd = service.exchangeRates.get("USD");
+        //EUR was committed late with an older 'updated_at'
+        when(currencyRepository.findByUpdatedAtGreaterThan(10L - service.reloadLookback.toMillis()))
+                .thenReturn(List.of(currency("USD", 10L), currency("EUR", 5L)));
+        when(currencyRepository.count()).thenReturn(2L);
+
+        // Act
+        service.reloadCachedCurrenciesData();
+
+        // Assert
+        assertEquals(version + 1, service.exchangeRates.snapshot().getVersion());
+        assertEquals(5L, service.exchangeRates.get("EUR").getTimestamp());
+        assertSame(usd, service.exchangeRates.get("USD"));
+        assertEquals(10L, service.cacheWatermark);
+    }
+
+    @Test
+    void testChangeNotification_reloadsCache() {
+        // Arrange
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(changeNotifications).addListener(listener.capture());
+        when(currencyRepository.findAll()).thenReturn(List.of(currency("USD", 10L)));
+
+        // Act
+        listener.getValue().run();
+
+        // Assert
+        assertTrue(service.exchangeRates.contains("USD"));
+        assertEquals(10L, service.cacheWatermark);
     }
 
     @Test
@@ -162,7 +726,7 @@ class OpenExchangeCurrencyServiceUnitTests {
         // Arrange
         Currency currency = new Currency();
         currency.setCurrencyName("USD");
-        currency.setRates("{\"USD\":1.0}");
+        currency.setRates(RatesCodec.encode(Map.of("USD", 1.0)));
 
         // Act
         ExchangeRate exchangeRate = service.map(currency);
@@ -177,7 +741,7 @@ class OpenExchangeCurrencyServiceUnitTests {
         // Arrange
         MutableBoolean failOnIteration = new MutableBoolean(false);
         List<Currency> entitiesList = new ArrayList<>();
-        CountDownLatch countDownLatch = new CountDownLatch(1);
+        Semaphore permits = new Semaphore(0);
         Map.Entry<String, String> entry = Map.entry("GBP", "British Pound");
         ExchangeRate exchangeRate = new ExchangeRate();
         exchangeRate.setBase("GBP");
@@ -185,13 +749,13 @@ class OpenExchangeCurrencyServiceUnitTests {
         when(openExchangeExternalAPIService.fetchExchangeRate("GBP")).thenReturn(exchangeRate);
 
         // Act
-        Runnable task = service.prepareCurrencyDataFetchTask(System.currentTimeMillis(), failOnIteration, entitiesList, countDownLatch, entry);
+        Runnable task = service.prepareCurrencyDataFetchTask(System.currentTimeMillis(), failOnIteration, entitiesList, permits, entry);
 
         // Assert
         task.run();
         verify(openExchangeExternalAPIService).fetchExchangeRate("GBP");
         assertEquals(1, entitiesList.size());
-        assertEquals(0, countDownLatch.getCount());
+        assertEquals(1, permits.availablePermits());
     }
 
     @Test
@@ -226,36 +790,34 @@ class OpenExchangeCurrencyServiceUnitTests {
 
         // Assert
         verify(openExchangeExternalAPIService, never()).fetchExchangeRate(any());
+        verify(openExchangeExternalAPIService, never()).fetchLatestRates();
         verify(currencyRepository, never()).save(any());
     }
 
     @Test
     void testAddCurrency_whenCurrencyDoesNotExist() {
         // Arrange
-        ExchangeRate exchangeRate = new ExchangeRate();
-        exchangeRate.setBase("GBP");
-        exchangeRate.setRates(Map.of("USD", 1.23));
-        when(openExchangeExternalAPIService.fetchExchangeRate("GBP")).thenReturn(exchangeRate);
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
 
         // Act
         service.addCurrency("GBP");
 
         // Assert
-        verify(openExchangeExternalAPIService).fetchExchangeRate("GBP");
+        verify(openExchangeExternalAPIService).fetchLatestRates();
         verify(currencyRepository).save(any(Currency.class));
-        assertTrue(service.exchangeRates.containsKey("GBP"));
+        assertTrue(service.exchangeRates.contains("GBP"));
     }
 
     @Test
     void testAddCurrency_whenExceptionIsThrown() {
         // Arrange
-        when(openExchangeExternalAPIService.fetchExchangeRate("GBP")).thenThrow(new RuntimeException());
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenThrow(new RuntimeException());
 
         // Act
         assertThrows(RuntimeException.class, () -> service.addCurrency("GBP"));
 
         // Assert
-        assertFalse(service.exchangeRates.containsKey("GBP"));
+        assertFalse(service.exchangeRates.contains("GBP"));
     }
 
     @Test
@@ -264,7 +826,6 @@ class OpenExchangeCurrencyServiceUnitTests {
         long taskTimestamp = System.currentTimeMillis();
         MutableBoolean failOnIteration = new MutableBoolean(false);
         Map<String, String> currentCurrencies = Map.of("GBP", "British Pound");
-        CountDownLatch countDownLatch = new CountDownLatch(currentCurrencies.size());
         ExchangeRate exchangeRate = new ExchangeRate();
         exchangeRate.setBase("GBP");
         exchangeRate.setRates(Map.of("USD", 1.23));
@@ -278,6 +839,150 @@ class OpenExchangeCurrencyServiceUnitTests {
         assertEquals(currentCurrencies.size(), entitiesList.size());
     }
 
+    @Test
+    void testPrepareEntitiesUsingThirdParty_boundsConcurrency() {
+        // Arrange
+        service.maxConcurrency = 2;
+        Map<String, String> currentCurrencies = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            currentCurrencies.put("C" + i, "Currency " + i);
+        }
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(openExchangeExternalAPIService.fetchExchangeRate(any())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            return new ExchangeRate(1L, invocation.getArgument(0), Map.of("USD", 1.0));
+        });
+
+        // Act
+        List<Currency> entitiesList = service.prepareEntitiesUsingThirdParty(System.currentTimeMillis(), currentCurrencies, new MutableBoolean(false));
+
+        // Assert
+        assertEquals(20, entitiesList.size());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    void testPrepareEntitiesUsingThirdParty_whenDeadlineIsReached() {
+        // Arrange
+        service.refreshDeadline = Duration.ofMillis(200);
+        MutableBoolean failOnIteration = new MutableBoolean(false);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(openExchangeExternalAPIService.fetchExchangeRate("GBP")).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return null;
+        });
+
+        // Act
+        List<Currency> entitiesList = service.prepareEntitiesUsingThirdParty(System.currentTimeMillis(), Map.of("GBP", "British Pound"), failOnIteration);
+
+        // Assert
+        assertTrue(entitiesList.isEmpty());
+        assertTrue(failOnIteration.getValue());
+        assertDoesNotThrow(() -> assertTrue(interrupted.await(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void testPrepareEntitiesUsingCrossRates() {
+        // Arrange
+        long taskTimestamp = System.currentTimeMillis();
+        MutableBoolean failOnIteration = new MutableBoolean(false);
+        Map<String, String> currentCurrencies = Map.of("GBP", "British Pound", "EUR", "Euro", "XXX", "No rate");
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+
+        // Act
+        List<Currency> entitiesList = service.prepareEntitiesUsingCrossRates(taskTimestamp, currentCurrencies, failOnIteration);
+
+        // Assert
+        verify(openExchangeExternalAPIService, times(1)).fetchLatestRates();
+        verify(openExchangeExternalAPIService, never()).fetchExchangeRate(any());
+        assertEquals(2, entitiesList.size());
+        assertFalse(failOnIteration.getValue());
+    }
+
+    @Test
+    void testPrepareEntitiesUsingCrossRates_whenExceptionIsThrown() {
+        // Arrange
+        MutableBoolean failOnIteration = new MutableBoolean(false);
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenThrow(new RuntimeException());
+
+        // Act
+        assertThrows(RuntimeException.class,
+                () -> service.prepareEntitiesUsingCrossRates(System.currentTimeMillis(), Map.of("GBP", "British Pound"), failOnIteration));
+
+        // Assert
+        assertTrue(failOnIteration.getValue());
+    }
+
+    @Test
+    void testDeriveCrossRate() {
+        // Arrange
+        RateRow usdRow = RateRow.copyOf(new CurrencyIndex(), usdRates().getRates());
+
+        // Act
+        ExchangeRate gbp = service.deriveCrossRate(1L, usdRow, "GBP");
+
+        // Assert
+        assertEquals("GBP", gbp.getBase());
+        assertEquals(1L, gbp.getTimestamp());
+        assertEquals(1.0, gbp.rateFor("GBP"), 1e-9);
+        assertEquals(1.25, gbp.rateFor("USD"), 1e-9);
+        assertEquals(0.9 / 0.8, gbp.rateFor("EUR"), 1e-9);
+        assertNull(service.deriveCrossRate(1L, usdRow, "XXX"));
+    }
+
+    @Test
+    void testConvert() {
+        // Arrange
+        service.exchangeRates.put("USD", usdRates());
+
+        // Act
+        ConversionResult result = service.convert("usd", "gbp", 10);
+
+        // Assert
+        assertEquals("USD", result.getFrom());
+        assertEquals("GBP", result.getTo());
+        assertEquals(0.8, result.getRate(), 1e-9);
+        assertEquals(8.0, result.getResult(), 1e-9);
+        verifyNoInteractions(openExchangeExternalAPIService);
+    }
+
+    @Test
+    void testConvert_whenRateDoesNotExist() {
+        // Arrange
+        service.exchangeRates.put("USD", usdRates());
+
+        // Act & Assert
+        assertNull(service.convert("USD", "XXX", 10));
+        assertNull(service.convert("XXX", "USD", 10));
+        verifyNoInteractions(openExchangeExternalAPIService);
+    }
+
+    @Test
+    void testConvertBatch() {
+        // Arrange
+        service.exchangeRates.put("USD", usdRates());
+        List<ConversionRequest> requests = List.of(
+                new ConversionRequest("USD", "EUR", 100),
+                new ConversionRequest("USD", "XXX", 100));
+
+        // Act
+        List<ConversionResult> results = service.convert(requests);
+
+        // Assert
+        assertEquals(2, results.size());
+        assertEquals(90.0, results.get(0).getResult(), 1e-9);
+        assertNull(results.get(1).getRate());
+        assertNull(results.get(1).getResult());
+    }
+
     @Test
     void testCleanNotRelevantData() {
         // Arrange
@@ -285,7 +990,7 @@ class OpenExchangeCurrencyServiceUnitTests {
         MutableBoolean failOnIteration = new MutableBoolean(false);
 
         // Act
-        service.cleanNotRelevantData(taskTimestamp, failOnIteration);
+        service.cleanNotRelevantData(taskTimestamp, Set.of(), failOnIteration);
 
         // Assert
         verify(transactionalInvoker).invokeTransactional(any());
@@ -294,6 +999,43 @@ class OpenExchangeCurrencyServiceUnitTests {
     @Test
     void testUpdateExchangeRates() {
         // Arrange
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound"));
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+
+        // Act
+        service.updateExchangeRates();
+
+        // Assert
+        verify(openExchangeExternalAPIService).getCurrencies();
+        verify(openExchangeExternalAPIService).fetchLatestRates();
+        verify(openExchangeExternalAPIService, never()).fetchExchangeRate(any());
+        verify(configurationService).setFetchLastTimestamp(anyLong());
+    }
+
+    @Test
+    void testUpdateExchangeRates_recordsMetrics() {
+        // Arrange
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound", "XXX", "Unknown"));
+        when(openExchangeExternalAPIService.fetchLatestRates()).thenReturn(usdRates());
+
+        // Act
+        service.updateExchangeRates();
+        service.getExchangeRates("GBP");
+
+        // Assert
+        for (String step : List.of("catalogue", "prepare", "bulk_update", "cleanup", "cache_reload")) {
+            assertEquals(1, meterRegistry.get("exchange.refresh.step").tags("step", step, "outcome", "success").timer().count());
+        }
+        assertEquals(1, meterRegistry.get("exchange.refresh").tag("outcome", "success").timer().count());
+        assertEquals(1.0, meterRegistry.get("exchange.refresh.currency.failures").tag("reason", "no_usd_rate").counter().count());
+        assertEquals(1.0, meterRegistry.get("exchange.db.rows").tag("operation", "upsert").counter().count());
+        assertEquals(1.0, meterRegistry.get("exchange.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testUpdateExchangeRates_perBase() {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
         ExchangeRate exchangeRate = new ExchangeRate();
         exchangeRate.setBase("GBP");
         exchangeRate.setRates(Map.of("USD", 1.23));
@@ -307,4 +1049,67 @@ class OpenExchangeCurrencyServiceUnitTests {
         verify(openExchangeExternalAPIService).getCurrencies();
         verify(configurationService).setFetchLastTimestamp(anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUpdateExchangeRates_perBase_queuesFailedCurrencies() {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound", "EUR", "Euro"));
+        when(openExchangeExternalAPIService.fetchExchangeRate("GBP")).thenReturn(new ExchangeRate(1L, "GBP", Map.of("USD", 1.23)));
+        when(openExchangeExternalAPIService.fetchExchangeRate("EUR")).thenThrow(new RuntimeException("Too many requests"));
+
+        // Act
+        RefreshScheduler.Outcome outcome = service.updateExchangeRates();
+
+        // Assert
+        assertEquals(RefreshScheduler.Outcome.PARTIAL, outcome);
+        verify(configurationService).setOpenExchangeRetryCurrencies(Set.of("EUR"));
+        verify(configurationService).setOpenExchangeFailOnLastIteration(true);
+    }
+
+    @Test
+    void testUpdateExchangeRates_perBase_whenTooManyCurrenciesFail() {
+        // Arrange
+        service.rateStrategy = RateFetchStrategy.PER_BASE;
+        service.maxRetryCurrencies = 1;
+        when(openExchangeExternalAPIService.getCurrencies()).thenReturn(Map.of("GBP", "British Pound", "EUR", "Euro"));
+        when(openExchangeExternalAPIService.fetchExchangeRate(anyString())).thenThrow(new RuntimeException("Too many requests"));
+
+        // Act
+        RefreshScheduler.Outcome outcome = service.updateExchangeRates();
+
+        // Assert
+        assertEquals(RefreshScheduler.Outcome.FAILED, outcome);
+        verify(configurationService).setOpenExchangeRetryCurrencies(Set.of());
+        verify(configurationService).setOpenExchangeFailOnLastIteration(true);
+    }
+
+    @Test
+    void testNextRunGauge() {
+        // Arrange
+        ReflectionTestUtils.setField(service, "interval", Duration.ofHours(1));
+        long now = System.currentTimeMillis();
+        when(configurationService.getFetchLastTimestamp()).thenReturn(now - Duration.ofMinutes(58).toMillis(), now - Duration.ofHours(2).toMillis());
+        when(refreshScheduler.getNextRunAt()).thenReturn(now + Duration.ofMinutes(10).toMillis());
+
+        // Act
+        double next = meterRegistry.get("exchange.refresh.next_run").gauge().value();
+        double overdue = meterRegistry.get("exchange.refresh.next_run").gauge().value();
+
+        // Assert
+        assertTrue(next <= 120 && next > 110);
+        assertEquals(0, overdue);
+    }
+
+    private static Currency currency(String code, long updatedAt) {
+        Currency currency = new Currency();
+        currency.setCurrencyName(code);
+        currency.setRates(RatesCodec.encode(Map.of(code, 1.0)));
+        currency.setUpdatedAt(updatedAt);
+        return currency;
+    }
+
+    private static ExchangeRate usdRates() {
+        return new ExchangeRate(1L, "USD", Map.of("USD", 1.0, "GBP", 0.8, "EUR", 0.9));
+    }
+}
@@ -0,0 +1,115 @@
+package com.exchange.service.open_exchange_impl;
+
+import com.exchange.service.ConfigurationService;
+import com.exchange.service.CurrencyMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OpenExchangeExternalAPIServiceTest {
+
+    private static final Map<String, String> CATALOGUE = Map.of("GBP", "British Pound", "EUR", "Euro");
+
+    @Mock
+    private IOpenExchangeClient openExchangeClient;
+
+    @Mock
+    private ConfigurationService configurationService;
+
+    private OpenExchangeExternalAPIService service;
+
+    @BeforeEach
+    public void setUp() {
+        service = new OpenExchangeExternalAPIService(openExchangeClient, configurationService, new CurrencyMetrics(new SimpleMeterRegistry()));
+        when(configurationService.getOpenExchangeBaseUrl()).thenReturn("https://openexchangerates.org");
+        when(configurationService.getOpenExchangeAppId()).thenReturn("app");
+    }
+
+    @Test
+    void testGetCurrencies_whenCatalogueIsFresh() {
+        // Arrange
+        when(openExchangeClient.getConditional(any(), any(), isNull(), isNull()))
+                .thenReturn(new IOpenExchangeClient.ConditionalResponse<>(CATALOGUE, "\"v1\"", null, false));
+
+        // Act
+        Map<String, String> first = service.getCurrencies();
+        String name = service.getCurrencyName("GBP");
+
+        // Assert
+        assertEquals(CATALOGUE, first);
+        assertEquals("British Pound", name);
+        verify(openExchangeClient, times(1)).getConditional(any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetCurrencies_whenExpiredAndNotModified() {
+        // Arrange
+        service.catalogueTtl = Duration.ZERO;
+        when(openExchangeClient.getConditional(any(), any(), isNull(), isNull()))
+                .thenReturn(new IOpenExchangeClient.ConditionalResponse<>(CATALOGUE, "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT", false));
+        when(openExchangeClient.getConditional(any(), any(), eq("\"v1\""), eq("Mon, 01 Jan 2024 00:00:00 GMT")))
+                .thenReturn(new IOpenExchangeClient.ConditionalResponse<>(null, "\"v1\"", null, true));
+
+        // Act
+        service.getCurrencies();
+        Map<String, String> revalidated = service.getCurrencies();
+
+        // Assert
+        assertEquals(CATALOGUE, revalidated);
+        verify(openExchangeClient, times(2)).getConditional(any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetCurrencies_whenExpiredAndModified() {
+        // Arrange
+        service.catalogueTtl = Duration.ZERO;
+        when(openExchangeClient.getConditional(any(), any(), isNull(), isNull()))
+                .thenReturn(new IOpenExchangeClient.ConditionalResponse<>(CATALOGUE, "\"v1\"", null, false));
+        when(openExchangeClient.getConditional(any(), any(), eq("\"v1\""), isNull()))
+                .thenReturn(new IOpenExchangeClient.ConditionalResponse<>(Map.of("JPY", "Japanese Yen"), "\"v2\"", null, false));
+
+        // Act
+        service.getCurrencies();
+        Map<String, String> revalidated = service.getCurrencies();
+
+        // Assert
+        assertEquals(Map.of("JPY", "Japanese Yen"), revalidated);
+    }
+
+    @Test
+    void testGetCurrencies_whenRevalidationFails() {
+        // Arrange
+        service.catalogueTtl = Duration.ZERO;
+        when(openExchangeClient.getConditional(any(), any(), isNull(), isNull()))
+                .thenReturn(new IOpenExchangeClient.ConditionalResponse<>(CATALOGUE, "\"v1\"", null, false));
+        when(openExchangeClient.getConditional(any(), any(), eq("\"v1\""), isNull()))
+                .thenThrow(new RuntimeException("Service unavailable"));
+
+        // Act
+        service.getCurrencies();
+        Map<String, String> held = service.getCurrencies();
+
+        // Assert
+        assertEquals(CATALOGUE, held);
+    }
+
+    @Test
+    void testGetCurrencies_whenFirstFetchFails() {
+        // Arrange
+        when(openExchangeClient.getConditional(any(), any(), any(), any())).thenThrow(new RuntimeException("Service unavailable"));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> service.getCurrencies());
+    }
+}
@@ -13,7 +13,6 @@ import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
 
@@ -48,7 +47,7 @@ class OpenExchangeIntegrationTests {
                     .responseTimeout(Duration.ofSeconds(180))
                     .build();
         }
-        ReflectionTestUtils.setField(currencyService, "exchangeRates", new HashMap<>());
+        currencyService.exchangeRates.replaceAll(new HashMap<>());
         currencyRepository.deleteAllInBatch();
     }
 
@@ -198,11 +197,9 @@ class OpenExchangeIntegrationTests {
                 .body(BodyInserters.fromValue("XXX"))
                 .exchange()
                 .expectStatus()
-                //It is a bag, because we can execute a request only for usd, so everytime we will receive a data for currency,
-                // doesn't matter what's name of it will be provided
-                .isCreated();
+                //rates are derived from the USD row, a code without a USD rate is not a currency
+                .isBadRequest();
 
-        //bug works fine, cudos for me
-        Assertions.assertTrue(currencyRepository.findById("XXX").isPresent());
+        Assertions.assertFalse(currencyRepository.findById("XXX").isPresent());
     }
 }
@@ -0,0 +1,95 @@
+package com.exchange.service.open_exchange_impl;
+
+import com.exchange.dtos.ExchangeRate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebClientOpenExchangeClientTest {
+
+    private DisposableServer server;
+    private ConnectionProvider connectionProvider;
+    private WebClientOpenExchangeClient client;
+
+    @BeforeEach
+    public void setUp() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/api/latest.json", (request, response) -> response
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.just("{\"timestamp\":1,\"base\":\"USD\",\"rates\":{\"USD\":1.0,\"GBP\":0.8}}")))
+                        .get("/api/currencies.json", (request, response) -> "\"v1\"".equals(request.requestHeaders().get("If-None-Match"))
+                                ? response.status(304).header("ETag", "\"v1\"").send()
+                                : response.header("Content-Type", "application/json").header("ETag", "\"v1\"")
+                                .sendString(Mono.just("{\"GBP\":\"British Pound\"}")))
+                        .get("/slow", (request, response) -> response
+                                .sendString(Mono.just("{}").delayElement(Duration.ofSeconds(5)))))
+                .bindNow();
+        connectionProvider = ConnectionProvider.builder("test").maxConnections(2).build();
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+        client = new WebClientOpenExchangeClient(webClient, Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.disposeNow();
+        connectionProvider.dispose();
+    }
+
+    @Test
+    void testGet() {
+        // Act
+        ExchangeRate rate = client.get(uri("/api/latest.json"), new ParameterizedTypeReference<>() {
+        });
+
+        // Assert
+        assertEquals("USD", rate.getBase());
+        assertEquals(0.8, rate.getRates().get("GBP"));
+    }
+
+    @Test
+    void testGetConditional() {
+        // Act
+        IOpenExchangeClient.ConditionalResponse<Map<String, String>> first = client.getConditional(uri("/api/currencies.json"),
+                new ParameterizedTypeReference<>() {
+                }, null, null);
+        IOpenExchangeClient.ConditionalResponse<Map<String, String>> second = client.getConditional(uri("/api/currencies.json"),
+                new ParameterizedTypeReference<>() {
+                }, first.etag(), null);
+
+        // Assert
+        assertFalse(first.notModified());
+        assertEquals(Map.of("GBP", "British Pound"), first.body());
+        assertEquals("\"v1\"", first.etag());
+        assertTrue(second.notModified());
+        assertNull(second.body());
+    }
+
+    @Test
+    void testGet_whenCallTimesOut() {
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> client.get(uri("/slow"), new ParameterizedTypeReference<ExchangeRate>() {
+        }));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.port() + path);
+    }
+}